@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.adonix.postrise;
+
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Runs the benchmarks matching the first argument at 1, 8 and 64 threads,
+ * reporting throughput and the sampled latency percentiles. Results are also
+ * written to {@code target/jmh-result-<threads>.json}.
+ */
+public final class BenchmarkRunner {
+
+    private static final int[] THREADS = { 1, 8, 64 };
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final String include = args.length > 0 ? args[0] : ".*Benchmark.*";
+        for (final int threads : THREADS) {
+            final Options options = new OptionsBuilder()
+                    .include(include)
+                    .mode(Mode.Throughput)
+                    .mode(Mode.SampleTime)
+                    .threads(threads)
+                    .forks(1)
+                    .warmupIterations(3)
+                    .warmupTime(TimeValue.seconds(2))
+                    .measurementIterations(5)
+                    .measurementTime(TimeValue.seconds(2))
+                    .jvmArgsAppend(getJvmArgs())
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("target/jmh-result-" + threads + ".json")
+                    .build();
+            new Runner(options).run();
+        }
+    }
+
+    /**
+     * Quiet the logging and forward the {@code benchmark.*} system properties to
+     * the forked benchmark JVM.
+     */
+    private static String[] getJvmArgs() {
+        return Stream.concat(Stream.of("-Dlogback.configurationFile=logback-benchmark.xml"),
+                System.getProperties().stringPropertyNames().stream()
+                        .filter(name -> name.startsWith("benchmark."))
+                        .map(name -> "-D" + name + "=" + System.getProperty(name)))
+                .toArray(String[]::new);
+    }
+}
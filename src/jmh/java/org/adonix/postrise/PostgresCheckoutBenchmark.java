@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.adonix.postrise;
+
+import static org.adonix.postrise.security.RoleSecurityProvider.DISABLE_ROLE_SECURITY;
+import static org.adonix.postrise.security.RoleSecurityProvider.POSTGRES_DEFAULT_ROLE_SECURITY;
+import static org.adonix.postrise.security.RoleSecurityProvider.POSTGRES_STRICT_ROLE_SECURITY;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import org.adonix.postrise.security.RoleSecurityListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Checkout paths measured against a running PostgreSQL server. The
+ * {@code LOGIN} user must be a member of the {@code ROLE}; the
+ * {@code roles.sql} test script creates both.
+ * <p>
+ * The connection is configured with system properties:
+ * <ul>
+ * <li>{@code benchmark.host} - default {@code localhost}</li>
+ * <li>{@code benchmark.port} - default {@code 5432}</li>
+ * <li>{@code benchmark.database} - default {@code postrise}</li>
+ * <li>{@code benchmark.username} - default {@code with_login_no_super}</li>
+ * <li>{@code benchmark.password} - default {@code helloworld}</li>
+ * <li>{@code benchmark.role} - default {@code no_login_no_super}</li>
+ * <li>{@code benchmark.pool} - maximum pool size, default {@code 16}</li>
+ * </ul>
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PostgresCheckoutBenchmark {
+
+    private static final String DATABASE_NAME = System.getProperty("benchmark.database", "postrise");
+    private static final String ROLE_NAME = System.getProperty("benchmark.role", "no_login_no_super");
+
+    /**
+     * A running server configured with the {@code ROLE} security policy.
+     */
+    @State(Scope.Benchmark)
+    public static class Servers {
+
+        @Param({ "DISABLE", "DEFAULT", "STRICT" })
+        String security;
+
+        Server server;
+
+        @Setup(Level.Trial)
+        public void setup() throws SQLException {
+            server = new BenchmarkServer(getRoleSecurity(security));
+            // Fill the pool before measurement starts.
+            server.getConnection(DATABASE_NAME).close();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            server.close();
+        }
+    }
+
+    @Benchmark
+    public void getConnection(final Servers servers) throws SQLException {
+        try (final Connection connection = servers.server.getConnection(DATABASE_NAME)) {
+            // Checkout and return only.
+        }
+    }
+
+    @Benchmark
+    public void getConnectionWithRole(final Servers servers) throws SQLException {
+        try (final Connection connection = servers.server.getConnection(DATABASE_NAME, ROLE_NAME)) {
+            // Checkout and return only.
+        }
+    }
+
+    private static RoleSecurityListener getRoleSecurity(final String security) {
+        switch (security) {
+            case "DEFAULT":
+                return POSTGRES_DEFAULT_ROLE_SECURITY;
+            case "STRICT":
+                return POSTGRES_STRICT_ROLE_SECURITY;
+            default:
+                return DISABLE_ROLE_SECURITY;
+        }
+    }
+
+    private static final class BenchmarkServer extends PostgresServer {
+
+        private final RoleSecurityListener security;
+
+        private BenchmarkServer(final RoleSecurityListener security) {
+            this.security = security;
+        }
+
+        @Override
+        public String getHostName() {
+            return System.getProperty("benchmark.host", POSTGRES_DEFAULT_HOSTNAME);
+        }
+
+        @Override
+        public Integer getPort() {
+            return Integer.getInteger("benchmark.port", POSTGRES_DEFAULT_PORT);
+        }
+
+        @Override
+        public void beforeCreate(final DataSourceSettings settings) {
+            final int poolSize = Integer.getInteger("benchmark.pool", 16);
+            settings.setUsername(System.getProperty("benchmark.username", "with_login_no_super"));
+            settings.setPassword(System.getProperty("benchmark.password", "helloworld"));
+            settings.setRoleSecurity(security);
+            settings.setMaxPoolSize(poolSize);
+            settings.setMinIdle(poolSize);
+        }
+    }
+}
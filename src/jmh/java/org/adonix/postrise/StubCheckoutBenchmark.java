@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.adonix.postrise;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Checkout paths measured against the {@link StubServer}. No database is
+ * required, so the results isolate the cost of the data source lookup, the
+ * lease and the listener dispatch from network and pool latency.
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StubCheckoutBenchmark {
+
+    private static final String ROLE_NAME = "benchmark_role";
+
+    /**
+     * A running server with a fixed number of data sources.
+     */
+    @State(Scope.Benchmark)
+    public static class Servers {
+
+        @Param({ "1", "64" })
+        int databases;
+
+        StubServer server;
+        String[] databaseNames;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            server = new StubServer();
+            databaseNames = new String[databases];
+            for (int i = 0; i < databases; i++) {
+                databaseNames[i] = "database_" + i;
+                server.getDataSource(databaseNames[i]);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            server.close();
+        }
+    }
+
+    /**
+     * Each thread cycles through the data sources of the server.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int index;
+
+        String next(final Servers servers) {
+            index = (index + 1) % servers.databases;
+            return servers.databaseNames[index];
+        }
+    }
+
+    /**
+     * The number of listeners notified of each data source lifecycle event.
+     */
+    @State(Scope.Benchmark)
+    public static class Listeners {
+
+        @Param({ "0", "1", "16" })
+        int listeners;
+    }
+
+    @Benchmark
+    public void getConnection(final Servers servers, final Cursor cursor) throws SQLException {
+        try (final Connection connection = servers.server.getConnection(cursor.next(servers))) {
+            // Checkout and return only.
+        }
+    }
+
+    @Benchmark
+    public void getConnectionWithRole(final Servers servers, final Cursor cursor) throws SQLException {
+        try (final Connection connection = servers.server.getConnection(cursor.next(servers), ROLE_NAME)) {
+            // Checkout and return only.
+        }
+    }
+
+    @Benchmark
+    public DataSourceContext getDataSource(final Servers servers, final Cursor cursor) {
+        return servers.server.getDataSource(cursor.next(servers));
+    }
+
+    /**
+     * A complete data source lifecycle, dispatching the create and close events
+     * to every listener.
+     */
+    @Benchmark
+    public void dataSourceLifecycle(final Listeners listeners, final Blackhole blackhole) {
+        final StubServer server = new StubServer();
+        for (int i = 0; i < listeners.listeners; i++) {
+            server.addListener(new DataSourceListener() {
+                @Override
+                public void beforeCreate(final DataSourceSettings settings) {
+                    blackhole.consume(settings);
+                }
+
+                @Override
+                public void afterCreate(final DataSourceContext context) {
+                    blackhole.consume(context);
+                }
+            });
+        }
+        blackhole.consume(server.getDataSource("database"));
+        server.close();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.adonix.postrise;
+
+import static org.adonix.postrise.security.RoleSecurityProvider.DISABLE_ROLE_SECURITY;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import org.adonix.postrise.security.RoleSecurityListener;
+
+/**
+ * A {@link Server} with data sources that never open a network connection.
+ * Every checkout returns the same stub {@link Connection}, so benchmarks
+ * measure only the overhead added by <b>Postrise</b> on top of the pool. The
+ * {@code ROLE} security is disabled because it requires a database.
+ */
+public class StubServer extends PostgresServer {
+
+    /**
+     * A {@link Connection} that ignores every call and returns the default value
+     * of the return type.
+     */
+    static final Connection STUB_CONNECTION = (Connection) Proxy.newProxyInstance(
+            StubServer.class.getClassLoader(), new Class<?>[] { Connection.class },
+            (proxy, method, args) -> {
+                final Class<?> type = method.getReturnType();
+                if (type == boolean.class) {
+                    return Boolean.FALSE;
+                }
+                if (type == int.class) {
+                    return 0;
+                }
+                return null;
+            });
+
+    @Override
+    protected PostgresDataSource createDataSource(final String databaseName) {
+        return new StubDataSource(this, databaseName);
+    }
+
+    /**
+     * A data source that leases the stub {@link Connection} without borrowing
+     * from the pool.
+     */
+    static final class StubDataSource extends PostgresDataSource {
+
+        StubDataSource(final Server server, final String databaseName) {
+            super(server, databaseName);
+        }
+
+        @Override
+        protected RoleSecurityListener getDefaultRoleSecurity() {
+            return DISABLE_ROLE_SECURITY;
+        }
+
+        @Override
+        public Connection getConnection() {
+            return lease(STUB_CONNECTION, null);
+        }
+
+        @Override
+        public Connection getConnection(final String roleName) {
+            return lease(STUB_CONNECTION, roleName);
+        }
+    }
+}
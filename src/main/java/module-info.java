@@ -22,6 +22,7 @@ module org.adonix.postrise {
     requires com.zaxxer.hikari;
     requires transitive java.sql;
     requires org.apache.logging.log4j;
+    requires org.postgresql.jdbc;
 
     exports org.adonix.postrise;
     exports org.adonix.postrise.security;
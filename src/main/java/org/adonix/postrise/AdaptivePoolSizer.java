@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.adonix.postrise;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import org.adonix.postrise.security.PostgresRoleDAO;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Resizes a running pool with an additive-increase, multiplicative-decrease
+ * (AIMD) policy. The pool grows by the number of waiting threads while
+ * connection requests wait, and shrinks by a quarter while less than half of the
+ * pool is in use.
+ * <p>
+ * The pool is sized between {@link ConnectionPoolSettings#getMinIdle()
+ * getMinIdle()} and the configured maximum pool size, and never above the
+ * {@code rolconnlimit} of the {@code LOGIN} user.
+ */
+final class AdaptivePoolSizer {
+
+    private static final Logger LOGGER = LogManager.getLogger(AdaptivePoolSizer.class);
+
+    /**
+     * An average wait above this threshold means the pool is too small even if no
+     * thread is waiting at the moment of the sample.
+     */
+    private static final long WAIT_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final ConnectionProvider provider;
+    private int ceiling;
+    private long borrowCount;
+    private long borrowWaitNanos;
+
+    /**
+     * @param provider - the data source to resize.
+     */
+    AdaptivePoolSizer(final ConnectionProvider provider) {
+        this.provider = provider;
+    }
+
+    /**
+     * Sample the pool since the previous call and resize it if required.
+     *
+     * @throws SQLException if the {@code ROLE} connection limit cannot be read.
+     */
+    void sample() throws SQLException {
+        if (ceiling == 0) {
+            ceiling = getCeiling();
+        }
+
+        final long count = provider.getBorrowCount();
+        final long waitNanos = provider.getBorrowWaitNanos();
+        final long borrows = count - borrowCount;
+        final long averageWait = borrows > 0 ? (waitNanos - borrowWaitNanos) / borrows : 0;
+        borrowCount = count;
+        borrowWaitNanos = waitNanos;
+
+        final int size = provider.getMaxPoolSize();
+        final int active = provider.getActiveConnections();
+        final int waiting = provider.getThreadsAwaitingConnection();
+
+        int target = size;
+        if (waiting > 0 || averageWait > WAIT_THRESHOLD_NANOS) {
+            target = size + Math.max(1, waiting);
+        } else if (active < size / 2) {
+            target = Math.max(active + 1, size - Math.max(1, size / 4));
+        }
+        target = Math.max(getFloor(), Math.min(ceiling, target));
+
+        if (target != size) {
+            LOGGER.debug("{}: resize pool {} -> {} (active={}, waiting={})", provider, size, target, active,
+                    waiting);
+            provider.resize(target);
+        }
+    }
+
+    /**
+     * @return {@code true} if the data source was closed.
+     */
+    boolean isClosed() {
+        return provider.isClosed();
+    }
+
+    private int getFloor() {
+        return Math.max(1, Math.min(provider.getMinIdle(), ceiling));
+    }
+
+    /**
+     * The configured maximum pool size limited by the {@code rolconnlimit} of the
+     * {@code LOGIN} user.
+     */
+    private int getCeiling() throws SQLException {
+        final int limit = provider.getMaxPoolSizeLimit();
+        try (final Connection connection = provider.getConnection()) {
+            final int connectionLimit = PostgresRoleDAO.getRole(connection, provider.getUsername())
+                    .getConnectionLimit();
+            return connectionLimit > 0 ? Math.min(limit, connectionLimit) : limit;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.adonix.postrise;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.copy.CopyOut;
+
+/**
+ * Bulk load and export with PostgreSQL {@code COPY}. Each operation leases a
+ * connection from the data source, runs the {@code COPY} statement in its own
+ * transaction and commits it, so a failed load leaves no partial rows behind.
+ * <p>
+ * The format is chosen by the {@code COPY} statement, for example
+ * {@code COPY my_table FROM STDIN (FORMAT binary)} or
+ * {@code COPY (SELECT ...) TO STDOUT (FORMAT csv)}. Data is passed through
+ * unchanged, so text, CSV and binary formats are all supported.
+ * <p>
+ * With a {@code ROLE}, the {@code ROLE} is set for the transaction as by
+ * {@link DataSourceContext#inTransaction(String, TransactionCallback)}.
+ *
+ * @see DataSourceContext#copy()
+ * @see DataSourceContext#copy(String)
+ * @see <a href="https://www.postgresql.org/docs/current/sql-copy.html">COPY</a>
+ */
+public final class BulkCopy {
+
+    /**
+     * The size of the buffer used to send data to the database.
+     */
+    private static final int BUFFER_SIZE = 65536;
+
+    /**
+     * Each thread reuses its own buffer for every {@code COPY FROM STDIN}.
+     */
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    /**
+     * A {@code COPY} operation on the copy API of a leased connection.
+     */
+    @FunctionalInterface
+    private interface CopyWork {
+        long copy(CopyManager copyManager) throws SQLException, IOException;
+    }
+
+    private final PostriseDataSource dataSource;
+    private final String roleName;
+
+    /**
+     * @param dataSource - the data source that leases the connections.
+     * @param roleName   - the {@code ROLE} for each transaction or {@code null}.
+     */
+    BulkCopy(final PostriseDataSource dataSource, final String roleName) {
+        this.dataSource = dataSource;
+        this.roleName = roleName;
+    }
+
+    /**
+     * Load data with {@code COPY ... FROM STDIN}.
+     *
+     * @param sql - the {@code COPY ... FROM STDIN} statement.
+     * @param in  - the data to load, read until the end of the stream.
+     * @return the number of rows loaded.
+     * @throws SQLException if a database access error occurs.
+     * @throws IOException  if reading the data fails.
+     */
+    public long copyIn(final String sql, final InputStream in) throws SQLException, IOException {
+        Guard.check("sql", sql);
+        Guard.check("in", in);
+        return run(false, copyManager -> copyIn(copyManager, sql, in));
+    }
+
+    /**
+     * Load data with {@code COPY ... FROM STDIN}.
+     *
+     * @param sql - the {@code COPY ... FROM STDIN} statement.
+     * @param in  - the data to load, read until the end of the channel.
+     * @return the number of rows loaded.
+     * @throws SQLException if a database access error occurs.
+     * @throws IOException  if reading the data fails.
+     */
+    public long copyIn(final String sql, final ReadableByteChannel in) throws SQLException, IOException {
+        Guard.check("in", in);
+        return copyIn(sql, Channels.newInputStream(in));
+    }
+
+    /**
+     * Load several inputs with the same {@code COPY ... FROM STDIN} statement in
+     * parallel, each on its own pooled connection and in its own transaction.
+     * All inputs are loaded even if one fails.
+     *
+     * @param sql         - the {@code COPY ... FROM STDIN} statement.
+     * @param inputs      - the data to load.
+     * @param parallelism - the maximum number of connections used at the same
+     *                    time.
+     * @return the number of rows loaded from each input in the order provided.
+     * @throws SQLException if a database access error occurs. Failures of other
+     *                      inputs are suppressed.
+     * @throws IOException  if reading the data fails.
+     */
+    public List<Long> copyIn(final String sql, final List<? extends InputStream> inputs, final int parallelism)
+            throws SQLException, IOException {
+        Guard.check("sql", sql);
+        Guard.check("inputs", inputs);
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Illegal parallelism " + parallelism);
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+                new DaemonThreadFactory("postrise-copy"));
+        try {
+            final List<CompletableFuture<Long>> futures = new ArrayList<>();
+            for (final InputStream in : inputs) {
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return copyIn(sql, in);
+                    } catch (final SQLException | IOException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor));
+            }
+            return join(futures);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Export data with {@code COPY ... TO STDOUT} in a read-only transaction.
+     *
+     * @param sql - the {@code COPY ... TO STDOUT} statement.
+     * @param out - receives the data. The stream is not closed.
+     * @return the number of rows exported.
+     * @throws SQLException if a database access error occurs.
+     * @throws IOException  if writing the data fails.
+     */
+    public long copyOut(final String sql, final OutputStream out) throws SQLException, IOException {
+        Guard.check("sql", sql);
+        Guard.check("out", out);
+        return run(true, copyManager -> copyOut(copyManager, sql, out));
+    }
+
+    /**
+     * Export data with {@code COPY ... TO STDOUT} in a read-only transaction.
+     *
+     * @param sql - the {@code COPY ... TO STDOUT} statement.
+     * @param out - receives the data. The channel is not closed.
+     * @return the number of rows exported.
+     * @throws SQLException if a database access error occurs.
+     * @throws IOException  if writing the data fails.
+     */
+    public long copyOut(final String sql, final WritableByteChannel out) throws SQLException, IOException {
+        Guard.check("out", out);
+        return copyOut(sql, Channels.newOutputStream(out));
+    }
+
+    private long run(final boolean isReadOnly, final CopyWork work) throws SQLException, IOException {
+        try (final Connection connection = dataSource.beginTransaction(roleName, isReadOnly)) {
+            try {
+                final long rows = work.copy(connection.unwrap(PGConnection.class).getCopyAPI());
+                connection.commit();
+                return rows;
+            } catch (final SQLException | IOException | RuntimeException e) {
+                try {
+                    connection.rollback();
+                } catch (final SQLException rollback) {
+                    e.addSuppressed(rollback);
+                }
+                throw e;
+            }
+        }
+    }
+
+    private static long copyIn(final CopyManager copyManager, final String sql, final InputStream in)
+            throws SQLException, IOException {
+        final byte[] buffer = BUFFER.get();
+        final CopyIn copy = copyManager.copyIn(sql);
+        try {
+            int length;
+            while ((length = in.read(buffer)) >= 0) {
+                if (length > 0) {
+                    copy.writeToCopy(buffer, 0, length);
+                }
+            }
+            return copy.endCopy();
+        } finally {
+            if (copy.isActive()) {
+                copy.cancelCopy();
+            }
+        }
+    }
+
+    private static long copyOut(final CopyManager copyManager, final String sql, final OutputStream out)
+            throws SQLException, IOException {
+        final CopyOut copy = copyManager.copyOut(sql);
+        try {
+            byte[] data;
+            while ((data = copy.readFromCopy()) != null) {
+                out.write(data);
+            }
+            return copy.getHandledRowCount();
+        } finally {
+            if (copy.isActive()) {
+                copy.cancelCopy();
+            }
+        }
+    }
+
+    /**
+     * Wait for all operations and throw the first failure with the others
+     * suppressed.
+     */
+    private static List<Long> join(final List<CompletableFuture<Long>> futures) throws SQLException, IOException {
+        final List<Long> results = new ArrayList<>();
+        Exception failure = null;
+        for (final CompletableFuture<Long> future : futures) {
+            try {
+                results.add(future.join());
+            } catch (final CompletionException e) {
+                final Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                if (failure == null) {
+                    failure = cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            }
+        }
+        if (failure instanceof SQLException) {
+            throw (SQLException) failure;
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure != null) {
+            throw (RuntimeException) failure;
+        }
+        return results;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.adonix.postrise;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fair semaphore with one permit for each connection in the pool. Threads
+ * beyond the maximum pool size wait here in FIFO order, parked without holding
+ * a monitor, instead of contending inside the pool.
+ *
+ * @see ConnectionPoolSettings#setFairCheckout(boolean)
+ */
+final class CheckoutGate extends Semaphore {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param permits - the maximum pool size.
+     */
+    CheckoutGate(final int permits) {
+        super(permits, true);
+    }
+
+    /**
+     * Wait for a permit to request a {@link Connection} from the pool.
+     *
+     * @param databaseName - the name of the database for the exception message.
+     * @param timeoutMs    - the maximum time to wait in milliseconds.
+     * @throws SQLTransientConnectionException if the timeout elapsed.
+     * @throws SQLException                    if the thread was interrupted.
+     */
+    void enter(final String databaseName, final long timeoutMs) throws SQLException {
+        try {
+            if (!tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new SQLTransientConnectionException(
+                        databaseName + " - Connection is not available, request timed out after " + timeoutMs + "ms.");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(databaseName + " - Interrupted during connection acquisition", e);
+        }
+    }
+
+    /**
+     * Change the number of permits when the maximum pool size changes. Permits
+     * already held are not revoked; the gate admits fewer threads as they are
+     * released.
+     *
+     * @param previous - the previous maximum pool size.
+     * @param next     - the new maximum pool size.
+     */
+    void resize(final int previous, final int next) {
+        if (next > previous) {
+            release(next - previous);
+        } else if (next < previous) {
+            reducePermits(previous - next);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.adonix.postrise;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Lends a fixed number of connections to the data sources of a {@link Server}.
+ * Each data source keeps a floor of {@code minIdle} connections. The rest of the
+ * budget is shared fairly, first by current demand and then as headroom, without
+ * exceeding the configured maximum pool size of any data source.
+ * <p>
+ * A new data source is limited to the connections left in the budget before
+ * its pool starts, so creating many data sources together never lends more
+ * than the budget beyond the floors. Reduced pools shrink as their idle
+ * connections are retired, so the limit is reached shortly after demand moves
+ * rather than immediately.
+ */
+final class ConnectionBudget {
+
+    private static final Logger LOGGER = LogManager.getLogger(ConnectionBudget.class);
+
+    private final int maxConnections;
+    private final Lock lock = new ReentrantLock();
+    private final List<ConnectionProvider> pending = new ArrayList<>();
+    private boolean isOvercommitted;
+    private int offset;
+
+    /**
+     * @param maxConnections - the maximum number of connections for all data
+     *                       sources.
+     */
+    ConnectionBudget(final int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * Limit a data source that is being created to the connections left in the
+     * budget. The data source keeps at least its floor. Its connections are
+     * excluded from rebalancing until {@link #release(ConnectionProvider)} is
+     * called.
+     *
+     * @param provider  - the data source before its pool starts.
+     * @param providers - the open data sources.
+     */
+    void reserve(final ConnectionProvider provider, final List<ConnectionProvider> providers) {
+        lock.lock();
+        try {
+            int allocated = getPending(providers);
+            for (final ConnectionProvider open : providers) {
+                allocated += open.getMaxPoolSize();
+            }
+            final int available = maxConnections - allocated;
+            final int ceiling = provider.getMaxPoolSizeLimit();
+            final int floor = Math.max(1, Math.min(provider.getMinIdle(), ceiling));
+            final int size = Math.max(floor, Math.min(ceiling, available));
+            if (size > available) {
+                LOGGER.warn("Connection budget ({}) exhausted, {} starts with {} connection(s)", maxConnections,
+                        provider, size);
+            }
+            if (provider.getMaxPoolSize() != size) {
+                provider.resize(size);
+            }
+            pending.add(provider);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Include a reserved data source in rebalancing once it is open, or release
+     * its reservation if the creation failed.
+     *
+     * @param provider - the reserved data source.
+     */
+    void release(final ConnectionProvider provider) {
+        lock.lock();
+        try {
+            pending.remove(provider);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Resize every data source to its share of the budget.
+     *
+     * @param providers - the open data sources.
+     */
+    void rebalance(final List<ConnectionProvider> providers) {
+        lock.lock();
+        try {
+            rebalance(providers, maxConnections - getPending(providers));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the connections reserved by data sources that are not open yet.
+     */
+    private int getPending(final List<ConnectionProvider> providers) {
+        int reserved = 0;
+        for (final ConnectionProvider provider : pending) {
+            if (!providers.contains(provider)) {
+                reserved += provider.getMaxPoolSize();
+            }
+        }
+        return reserved;
+    }
+
+    private void rebalance(final List<ConnectionProvider> providers, final int budget) {
+        final int size = providers.size();
+        if (size == 0) {
+            return;
+        }
+        final int[] floors = new int[size];
+        final int[] ceilings = new int[size];
+        final int[] demands = new int[size];
+        for (int i = 0; i < size; i++) {
+            final ConnectionProvider provider = providers.get(i);
+            ceilings[i] = provider.getMaxPoolSizeLimit();
+            floors[i] = Math.max(1, Math.min(provider.getMinIdle(), ceilings[i]));
+            // One connection more than the current demand lets a busy pool grow.
+            demands[i] = provider.getActiveConnections() + provider.getThreadsAwaitingConnection() + 1;
+        }
+
+        final int[] sizes = allocate(budget, floors, ceilings, demands);
+        for (int i = 0; i < size; i++) {
+            final ConnectionProvider provider = providers.get(i);
+            if (provider.getMaxPoolSize() != sizes[i] && !provider.isClosed()) {
+                provider.resize(sizes[i]);
+            }
+        }
+    }
+
+    /**
+     * Allocate the floors, then water-fill the remaining budget toward demand and
+     * then toward the ceilings. The starting data source rotates on every call so
+     * a remainder smaller than the number of data sources is shared over time.
+     */
+    private int[] allocate(final int budget, final int[] floors, final int[] ceilings, final int[] demands) {
+        final int size = floors.length;
+        final int[] sizes = floors.clone();
+        int remaining = budget;
+        for (final int floor : floors) {
+            remaining -= floor;
+        }
+
+        if (remaining < 0 != isOvercommitted) {
+            isOvercommitted = remaining < 0;
+            if (isOvercommitted) {
+                LOGGER.warn("Connection budget ({}) < sum of minimum idle connections ({})", budget,
+                        budget - remaining);
+            }
+        }
+
+        final int[] wants = new int[size];
+        for (int i = 0; i < size; i++) {
+            wants[i] = Math.min(ceilings[i], Math.max(demands[i], floors[i]));
+        }
+        offset = (offset + 1) % size;
+        remaining = fill(sizes, wants, remaining);
+        fill(sizes, ceilings, remaining);
+        return sizes;
+    }
+
+    private int fill(final int[] sizes, final int[] targets, int remaining) {
+        while (remaining > 0) {
+            int wanting = 0;
+            for (int i = 0; i < sizes.length; i++) {
+                if (sizes[i] < targets[i]) {
+                    wanting++;
+                }
+            }
+            if (wanting == 0) {
+                break;
+            }
+            final int share = Math.max(1, remaining / wanting);
+            for (int n = 0; n < sizes.length && remaining > 0; n++) {
+                final int i = (offset + n) % sizes.length;
+                final int grant = Math.min(Math.min(share, targets[i] - sizes[i]), remaining);
+                if (grant > 0) {
+                    sizes[i] += grant;
+                    remaining -= grant;
+                }
+            }
+        }
+        return remaining;
+    }
+}
@@ -201,4 +201,54 @@ interface ConnectionPoolSettings {
      * @return the maximum lifetime of a connection in the pool.
      */
     long getMaxLifetime();
+
+    /**
+     * Enables runtime resizing of the pool based on demand. The maximum pool size
+     * grows while threads wait for connections and shrinks while most connections
+     * are idle, between {@link #getMinIdle()} and {@link #getMaxPoolSize()}. The
+     * size never exceeds the {@code rolconnlimit} of the {@code LOGIN} user.
+     * Ignored when the {@link Server} has a connection budget, which already sizes
+     * pools by demand. Default: false
+     * 
+     * @param isAdaptivePoolSize - {@code true} to resize the pool at runtime.
+     */
+    void setAdaptivePoolSize(boolean isAdaptivePoolSize);
+
+    /**
+     * Enables runtime resizing of the pool based on demand. The maximum pool size
+     * grows while threads wait for connections and shrinks while most connections
+     * are idle, between {@link #getMinIdle()} and {@link #getMaxPoolSize()}. The
+     * size never exceeds the {@code rolconnlimit} of the {@code LOGIN} user.
+     * Ignored when the {@link Server} has a connection budget, which already sizes
+     * pools by demand. Default: false
+     * 
+     * @return {@code true} if the pool is resized at runtime.
+     */
+    boolean isAdaptivePoolSize();
+
+    /**
+     * Enables a fair checkout queue in front of the pool. Threads wait for one of
+     * {@link #getMaxPoolSize()} permits in FIFO order before requesting a
+     * connection, and the permit is released when the connection is closed. The
+     * wait parks the thread without holding a monitor, so many virtual threads
+     * contending for a small pool do not pin their carrier threads, and are
+     * served in arrival order. The wait is bounded by
+     * {@link #getConnectionTimeout()}. Default: false
+     * 
+     * @param isFairCheckout - {@code true} to queue checkouts in arrival order.
+     */
+    void setFairCheckout(boolean isFairCheckout);
+
+    /**
+     * Enables a fair checkout queue in front of the pool. Threads wait for one of
+     * {@link #getMaxPoolSize()} permits in FIFO order before requesting a
+     * connection, and the permit is released when the connection is closed. The
+     * wait parks the thread without holding a monitor, so many virtual threads
+     * contending for a small pool do not pin their carrier threads, and are
+     * served in arrival order. The wait is bounded by
+     * {@link #getConnectionTimeout()}. Default: false
+     * 
+     * @return {@code true} if checkouts are queued in arrival order.
+     */
+    boolean isFairCheckout();
 }
@@ -17,6 +17,8 @@
 package org.adonix.postrise;
 
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
 
 /**
  * Implementations of this interface will return a JDBC {@link Connection}
@@ -34,4 +36,59 @@ interface ConnectionProvider extends AutoCloseable, DataSourceContext, DataSourc
      * handled by the {@link Server} implementation.
      */
     void close();
+
+    /**
+     * The time of the most recent connection request, used to find data sources
+     * that can be evicted.
+     *
+     * @return the {@link System#nanoTime()} of the most recent connection
+     *         request.
+     */
+    long getLastUsed();
+
+    /**
+     * The maximum pool size configured for this data source before any runtime
+     * resizing. This is the ceiling for {@link #resize(int)}.
+     *
+     * @return the configured maximum pool size.
+     */
+    int getMaxPoolSizeLimit();
+
+    /**
+     * Change the maximum pool size of the running pool without changing the
+     * configured limit. Connections above a reduced size are retired as they
+     * become idle.
+     *
+     * @param maxPoolSize - the new maximum pool size.
+     */
+    void resize(int maxPoolSize);
+
+    /**
+     * @return the number of connections requested from the pool.
+     */
+    long getBorrowCount();
+
+    /**
+     * @return the cumulative nanoseconds spent waiting for connections from the
+     *         pool.
+     */
+    long getBorrowWaitNanos();
+
+    /**
+     * Open a new {@link Connection} outside the pool with the settings of this
+     * data source. The caller must close the connection.
+     *
+     * @param overrides - the connection properties that replace the data source
+     *                  properties.
+     * @return a new {@link Connection} that is not counted as a use.
+     * @throws SQLException if a database access error occurs.
+     */
+    Connection connect(Properties overrides) throws SQLException;
+
+    /**
+     * Set by the {@link Server} before the data source is configured.
+     *
+     * @param metrics - the {@link PostriseMetrics} to receive measurements.
+     */
+    void setMetrics(PostriseMetrics metrics);
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.adonix.postrise;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks the {@code ROLE} currently set on each physical {@link Connection} in
+ * a pool. Lookups never block, so checkouts of different connections do not
+ * contend. Physical connections retired by the pool are pruned once the number
+ * of entries outgrows the connections still open.
+ * <p>
+ * A connection without an entry is in an unknown state and must be treated as
+ * if any {@code ROLE} could be set.
+ */
+final class ConnectionRoleTracker {
+
+    /**
+     * Marks a physical connection known to have no {@code ROLE} set.
+     */
+    private static final String NO_ROLE = "";
+
+    /**
+     * The number of entries that triggers the first prune of closed connections.
+     */
+    private static final int MIN_PRUNE_SIZE = 64;
+
+    private final Map<Connection, String> roles = new ConcurrentHashMap<>();
+    private volatile int pruneSize = MIN_PRUNE_SIZE;
+
+    /**
+     * Check if the physical connection is known to be in the {@code ROLE}.
+     *
+     * @param connection - the pooled {@link Connection}.
+     * @param roleName   - the expected {@code ROLE} or {@code null} for no
+     *                   {@code ROLE}.
+     * @return {@code true} if the {@code ROLE} is known to be set.
+     * @throws SQLException if the physical connection cannot be unwrapped.
+     */
+    boolean isRole(final Connection connection, final String roleName) throws SQLException {
+        return toValue(roleName).equals(roles.get(physical(connection)));
+    }
+
+    /**
+     * Record the {@code ROLE} now set on the physical connection. The
+     * {@code ROLE} is only recorded when it was applied outside of a transaction,
+     * otherwise a rollback could revert it without notice.
+     *
+     * @param connection - the pooled {@link Connection}.
+     * @param roleName   - the {@code ROLE} that was set or {@code null} after
+     *                   {@code RESET ROLE}.
+     * @throws SQLException if a database access error occurs.
+     */
+    void setRole(final Connection connection, final String roleName) throws SQLException {
+        if (connection.getAutoCommit()) {
+            roles.put(physical(connection), toValue(roleName));
+            if (roles.size() > pruneSize) {
+                prune();
+            }
+        } else {
+            clear(connection);
+        }
+    }
+
+    /**
+     * Forget the {@code ROLE} of the physical connection.
+     *
+     * @param connection - the pooled {@link Connection}.
+     * @throws SQLException if the physical connection cannot be unwrapped.
+     */
+    void clear(final Connection connection) throws SQLException {
+        roles.remove(physical(connection));
+    }
+
+    /**
+     * Forget the {@code ROLE} of the physical connection and check if it was
+     * known to be in the {@code ROLE}.
+     *
+     * @param connection - the pooled {@link Connection}.
+     * @param roleName   - the expected {@code ROLE} or {@code null} for no
+     *                   {@code ROLE}.
+     * @return {@code true} if the {@code ROLE} was known to be set.
+     * @throws SQLException if the physical connection cannot be unwrapped.
+     */
+    boolean take(final Connection connection, final String roleName) throws SQLException {
+        return roles.remove(physical(connection), toValue(roleName));
+    }
+
+    /**
+     * Forget the {@code ROLE} of every physical connection.
+     */
+    void clearAll() {
+        roles.clear();
+    }
+
+    /**
+     * Remove the entries of physical connections closed by the pool, then allow
+     * the map to double before pruning again.
+     */
+    private void prune() throws SQLException {
+        for (final Connection connection : roles.keySet()) {
+            if (connection.isClosed()) {
+                roles.remove(connection);
+            }
+        }
+        pruneSize = Math.max(MIN_PRUNE_SIZE, roles.size() * 2);
+    }
+
+    private static Connection physical(final Connection connection) throws SQLException {
+        return connection.unwrap(Connection.class);
+    }
+
+    private static String toValue(final String roleName) {
+        return roleName == null ? NO_ROLE : roleName;
+    }
+}
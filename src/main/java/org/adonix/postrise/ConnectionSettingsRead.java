@@ -17,6 +17,7 @@
 package org.adonix.postrise;
 
 import java.util.Properties;
+import java.util.Set;
 
 /**
  * Read-only settings for a data source after it is created.
@@ -47,6 +48,80 @@ interface ConnectionSettingsRead extends DatabaseNameProvider {
      */
     boolean isAutoCommit();
 
+    /**
+     * This property controls whether the data source tracks the {@code ROLE} set
+     * on each pooled connection to skip redundant {@code SET ROLE} and
+     * {@code RESET ROLE} statements. Default: false
+     * 
+     * @return the current {@code ROLE} affinity setting.
+     */
+    boolean isRoleAffinity();
+
+    /**
+     * This property controls whether {@code SET ROLE} is deferred and sent in the
+     * same batch as the first statement. Default: false
+     * 
+     * @return the current deferred {@code ROLE} setting.
+     */
+    boolean isDeferredRole();
+
+    /**
+     * This property controls the session state cleared when a
+     * {@link java.sql.Connection Connection} is closed, on a background thread
+     * before it is returned to the pool. Default: none
+     * 
+     * @return the current {@link SessionReset} stages.
+     */
+    Set<SessionReset> getSessionReset();
+
+    /**
+     * This property controls the maximum number of times a transaction is retried
+     * after a serialization failure or deadlock. Default: 0
+     * 
+     * @return the current maximum number of transaction retries.
+     */
+    int getMaxTransactionRetries();
+
+    /**
+     * This property controls the base backoff in milliseconds before a
+     * transaction is retried. Default: 10
+     * 
+     * @return the current base retry backoff.
+     */
+    long getTransactionRetryBackoff();
+
+    /**
+     * This property controls the number of rows fetched from the server-side
+     * cursor at a time by a streamed query. Default: 1000
+     * 
+     * @return the current stream fetch size.
+     */
+    int getFetchSize();
+
+    /**
+     * This property controls the maximum number of writes sent in one batch by
+     * the write-behind queue. Default: 1000
+     * 
+     * @return the current write-behind batch size.
+     */
+    int getWriteBehindBatchSize();
+
+    /**
+     * This property controls the maximum time in milliseconds a write waits in
+     * the write-behind queue for its batch to fill. Default: 100
+     * 
+     * @return the current write-behind flush interval.
+     */
+    long getWriteBehindFlushInterval();
+
+    /**
+     * This property controls the maximum number of writes held by the
+     * write-behind queue. Default: 10000
+     * 
+     * @return the current write-behind queue capacity.
+     */
+    int getWriteBehindCapacity();
+
     /**
      * Get the current {@link Properties} for this data source.
      * 
@@ -47,6 +47,108 @@ interface ConnectionSettingsWrite extends ConnectionSettingsRead {
      */
     void setAutoCommit(boolean isAutoCommit);
 
+    /**
+     * This property controls whether the data source tracks the {@code ROLE} set
+     * on each pooled connection. When enabled, {@code SET ROLE} and
+     * {@code RESET ROLE} are skipped if the connection is already in the requested
+     * {@code ROLE}. The pool hands each thread the connection it used last when
+     * available, so threads repeatedly requesting the same {@code ROLE} will
+     * usually avoid the extra round trip. Default: false
+     * <p>
+     * The {@code ROLE} must only be changed through Postrise while this property
+     * is enabled. SQL that changes the {@code ROLE} on a connection leased
+     * without a {@code ROLE} is detected, but changes made on the server are
+     * not, such as a function that calls {@code set_config('role', ..., false)}.
+     * 
+     * @param isRoleAffinity - enable {@code ROLE} affinity for new data sources.
+     */
+    void setRoleAffinity(boolean isRoleAffinity);
+
+    /**
+     * This property controls whether {@code SET ROLE} is deferred until the first
+     * statement is executed on a {@link java.sql.Connection Connection} requested
+     * with a {@code ROLE}. The {@code ROLE} is then sent in the same batch as the
+     * first statement created by {@code createStatement()} or
+     * {@code prepareStatement(String)}, saving a round trip. Default: false
+     * 
+     * @param isDeferredRole - enable deferred {@code ROLE} for new data sources.
+     */
+    void setDeferredRole(boolean isDeferredRole);
+
+    /**
+     * This property controls the session state cleared when a
+     * {@link java.sql.Connection Connection} is closed. The stages are sent in a
+     * single batch on a background thread before the connection is returned to
+     * the pool, so neither the caller nor the next borrower waits for the reset.
+     * An open transaction is rolled back first. A connection that fails to reset
+     * is evicted from the pool. Default: none
+     * 
+     * @param stages - the {@link SessionReset} stages for new data sources, none to
+     *               disable.
+     */
+    void setSessionReset(SessionReset... stages);
+
+    /**
+     * This property controls the maximum number of times a transaction run by
+     * {@link DataSourceContext#inTransaction(String, TransactionCallback)} is
+     * retried after a serialization failure (SQL State 40001) or deadlock (SQL
+     * State 40P01). Default: 0
+     * 
+     * @param maxTransactionRetries - the maximum number of retries for new data
+     *                              sources.
+     */
+    void setMaxTransactionRetries(int maxTransactionRetries);
+
+    /**
+     * This property controls the base backoff in milliseconds before a
+     * transaction is retried. The backoff doubles with each retry of the same
+     * transaction up to one second, or up to this base if it is larger, and a
+     * random delay up to the backoff is used. Default: 10
+     * 
+     * @param transactionRetryBackoffMs - the base retry backoff for new data
+     *                                  sources.
+     */
+    void setTransactionRetryBackoff(long transactionRetryBackoffMs);
+
+    /**
+     * This property controls the number of rows fetched from the server-side
+     * cursor at a time by
+     * {@link DataSourceContext#stream(String, RowMapper, Object...)}. Default: 1000
+     * 
+     * @param fetchSize - the stream fetch size for new data sources.
+     */
+    void setFetchSize(int fetchSize);
+
+    /**
+     * This property controls the maximum number of writes sent in one batch by
+     * the {@link DataSourceContext#getWriteBehind() write-behind queue}.
+     * Default: 1000
+     * 
+     * @param writeBehindBatchSize - the write-behind batch size for new data
+     *                             sources.
+     */
+    void setWriteBehindBatchSize(int writeBehindBatchSize);
+
+    /**
+     * This property controls the maximum time in milliseconds a write waits in
+     * the {@link DataSourceContext#getWriteBehind() write-behind queue} for its
+     * batch to fill before the batch is sent. Default: 100
+     * 
+     * @param writeBehindFlushIntervalMs - the write-behind flush interval for
+     *                                   new data sources.
+     */
+    void setWriteBehindFlushInterval(long writeBehindFlushIntervalMs);
+
+    /**
+     * This property controls the maximum number of writes held by the
+     * {@link DataSourceContext#getWriteBehind() write-behind queue}. When the
+     * queue is full, new writes wait for space. Default: 10000
+     * 
+     * @param writeBehindCapacity - the write-behind queue capacity for new data
+     *                            sources.
+     */
+    void setWriteBehindCapacity(int writeBehindCapacity);
+
     /**
      * Add any properties for the data source configuration.
      * 
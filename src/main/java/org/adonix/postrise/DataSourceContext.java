@@ -18,6 +18,7 @@ package org.adonix.postrise;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.stream.Stream;
 
 /**
  * Implementations will provide a live data source ready to provide a
@@ -41,4 +42,158 @@ public interface DataSourceContext extends ConnectionPoolSettings, ConnectionPoo
      * @throws SQLException if a database access error occurs.
      */
     Connection getConnection(String roleName) throws SQLException;
+
+    /**
+     * Get a connection without a {@code ROLE} for background work of this data
+     * source, such as a cache refresh. Unlike {@link #getConnection()}, it does
+     * not count as use of the data source, so it never keeps an idle data source
+     * from being evicted.
+     * 
+     * @return A {@link Connection} to the data source.
+     * @throws SQLException if a database access error occurs.
+     */
+    Connection getBackgroundConnection() throws SQLException;
+
+    /**
+     * Run the work in a transaction with the {@code ROLE} set only for that
+     * transaction. The {@code ROLE} is set with {@code set_config(..., true)} as
+     * the first statement, which the driver sends in the same round trip as
+     * {@code BEGIN}. The transaction is committed when the work returns and rolled
+     * back if it throws. PostgreSQL reverts the {@code ROLE} at the end of the
+     * transaction, so the connection is returned to the pool without a
+     * {@code RESET ROLE}.
+     * <p>
+     * The {@code ROLE} security of this data source is checked before the
+     * transaction starts. The work must not end the transaction itself. The
+     * {@link Connection} methods and SQL such as {@code COMMIT} that would end it
+     * are rejected with SQL State {@code 25000}. If the work sends such SQL
+     * through the underlying connection, the {@code ROLE} is found missing before
+     * the commit: the work done since is rolled back and an {@link SQLException}
+     * is thrown. Work committed by that SQL cannot be undone.
+     * <p>
+     * A transaction that fails with a serialization failure or deadlock is run
+     * again up to {@link #getMaxTransactionRetries()} times, so the work must be
+     * safe to repeat. The connection is returned to the pool before each backoff.
+     * Retries are also limited to a fraction of all transactions of this data
+     * source, so a contention spike does not turn into a retry storm.
+     * 
+     * @param <T>      the type of the result.
+     * @param roleName - the {@code ROLE} to be set for the transaction or
+     *                 {@code null} for the {@code LOGIN} user.
+     * @param work     - the work to run in the transaction.
+     * @return the result of the work.
+     * @throws SQLException if a database access error occurs.
+     */
+    <T> T inTransaction(String roleName, TransactionCallback<T> work) throws SQLException;
+
+    /**
+     * Run the work in a transaction with the isolation level and the
+     * {@code ROLE} set only for that transaction. The isolation level is set
+     * before the {@code ROLE}, and the connection is returned to the pool with
+     * its default isolation level. A {@link Connection#TRANSACTION_SERIALIZABLE}
+     * transaction that fails with a serialization failure is run again as by
+     * {@link #inTransaction(String, TransactionCallback)}.
+     * 
+     * @param <T>       the type of the result.
+     * @param roleName  - the {@code ROLE} to be set for the transaction or
+     *                  {@code null} for the {@code LOGIN} user.
+     * @param isolation - one of the {@link Connection} transaction isolation
+     *                  levels other than {@link Connection#TRANSACTION_NONE}.
+     * @param work      - the work to run in the transaction.
+     * @return the result of the work.
+     * @throws SQLException if a database access error occurs.
+     */
+    <T> T inTransaction(String roleName, int isolation, TransactionCallback<T> work) throws SQLException;
+
+    /**
+     * Stream the rows of a query from a server-side cursor. The query runs in a
+     * read-only transaction and rows are fetched {@link #getFetchSize()} at a time
+     * as the {@link Stream} is consumed, so large results are never held in
+     * memory at once.
+     * <p>
+     * The {@link Stream} holds a pooled connection until the last row is read, a
+     * row fails, or the {@link Stream} is closed. Use it in a try-with-resources
+     * statement. A failure while reading rows is thrown as an
+     * {@link UncheckedSQLException}.
+     * 
+     * @param <T>        the type of each row.
+     * @param sql        - the query.
+     * @param mapper     - maps each row.
+     * @param parameters - the query parameters.
+     * @return a sequential {@link Stream} of the mapped rows.
+     * @throws SQLException if a database access error occurs.
+     */
+    <T> Stream<T> stream(String sql, RowMapper<T> mapper, Object... parameters) throws SQLException;
+
+    /**
+     * Stream the rows of a query from a server-side cursor with the
+     * {@code ROLE} set for the read-only transaction.
+     * 
+     * @param <T>        the type of each row.
+     * @param roleName   - the {@code ROLE} to be set for the transaction.
+     * @param sql        - the query.
+     * @param mapper     - maps each row.
+     * @param parameters - the query parameters.
+     * @return a sequential {@link Stream} of the mapped rows.
+     * @throws SQLException if a database access error occurs.
+     * @see #stream(String, RowMapper, Object...)
+     */
+    <T> Stream<T> stream(String roleName, String sql, RowMapper<T> mapper, Object... parameters)
+            throws SQLException;
+
+    /**
+     * Get a {@link BulkCopy} to load and export data with PostgreSQL
+     * {@code COPY} on the connections of this data source.
+     * 
+     * @return a {@link BulkCopy} for this data source.
+     */
+    BulkCopy copy();
+
+    /**
+     * Get a {@link BulkCopy} to load and export data with PostgreSQL
+     * {@code COPY} with the {@code ROLE} set for each transaction.
+     * 
+     * @param roleName - the {@code ROLE} to be set for each transaction.
+     * @return a {@link BulkCopy} for this data source and {@code ROLE}.
+     */
+    BulkCopy copy(String roleName);
+
+    /**
+     * Get the {@link WriteBehindQueue} of this data source, which sends small
+     * writes to the database in batches on a background thread. The queue is
+     * created on first use with the current write-behind settings. When the data
+     * source is closed, queued writes are flushed for up to the connection
+     * timeout and any writes left fail.
+     * <p>
+     * The writes run as the {@code LOGIN} user. Each flush leases its connection
+     * as {@link #getConnection()} does, so a {@code ROLE} left on the connection
+     * is reset first. Use {@link #getWriteBehind(String)} to write as a
+     * {@code ROLE}.
+     * 
+     * @return the {@link WriteBehindQueue} for this data source.
+     * @throws SQLException if the data source is closed.
+     */
+    WriteBehindQueue getWriteBehind() throws SQLException;
+
+    /**
+     * Get the {@link WriteBehindQueue} of this data source for a {@code ROLE}.
+     * Each flush runs in a transaction with the {@code ROLE} set only for that
+     * transaction, as by {@link #inTransaction(String, TransactionCallback)}, so
+     * no {@code RESET ROLE} is sent. The {@code ROLE} security of this data
+     * source is checked on each flush. Each {@code ROLE} has its own queue and
+     * flush thread.
+     * 
+     * @param roleName - the {@code ROLE} of the writes.
+     * @return the {@link WriteBehindQueue} for this data source and
+     *         {@code ROLE}.
+     * @throws SQLException if the data source is closed.
+     */
+    WriteBehindQueue getWriteBehind(String roleName) throws SQLException;
+
+    /**
+     * Check if this data source has been closed.
+     * 
+     * @return {@code true} if the data source is closed.
+     */
+    boolean isClosed();
 }
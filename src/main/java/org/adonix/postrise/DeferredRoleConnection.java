@@ -0,0 +1,386 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.adonix.postrise;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.adonix.postrise.security.PostgresRoleDAO;
+import org.adonix.postrise.security.RoleSecurityException;
+
+/**
+ * A {@link Connection} wrapper that defers {@code SET ROLE} until the first
+ * statement is executed. The {@code set_config} statement is sent in the same
+ * multi-statement batch as the first statement, saving a network round trip on
+ * every checkout.
+ * <p>
+ * Only {@link Connection#createStatement()} and
+ * {@link Connection#prepareStatement(String)} are pipelined. Any other
+ * {@link Connection} method that could reach the server applies the
+ * {@code ROLE} with a separate statement first. A statement returns this
+ * wrapper from {@link Statement#getConnection()} and applies the {@code ROLE}
+ * before it is unwrapped.
+ */
+final class DeferredRoleConnection implements InvocationHandler {
+
+    /**
+     * SQL State "invalid_parameter_value" raised by {@code set_config} for a
+     * {@code ROLE} that does not exist.
+     */
+    private static final String INVALID_PARAMETER_VALUE = "22023";
+
+    /**
+     * SQL State "undefined_object" raised for a {@code ROLE} that does not exist.
+     */
+    private static final String UNDEFINED_OBJECT = "42704";
+
+    /**
+     * SQL State "insufficient_privilege" raised when the {@code LOGIN} user is not
+     * a member of the {@code ROLE}.
+     */
+    private static final String INSUFFICIENT_PRIVILEGE = "42501";
+
+    /**
+     * SQL States that {@code set_config} raises for a {@code ROLE} that cannot be
+     * set.
+     */
+    private static final Set<String> ROLE_ERRORS = new HashSet<>(Arrays.asList(
+            INVALID_PARAMETER_VALUE, UNDEFINED_OBJECT, INSUFFICIENT_PRIVILEGE));
+
+    /**
+     * {@link Connection} methods that never require the {@code ROLE} to be set.
+     */
+    private static final Set<String> LOCAL_METHODS = new HashSet<>(Arrays.asList(
+            "close", "isClosed", "isWrapperFor", "getAutoCommit", "setAutoCommit", "isReadOnly", "setReadOnly",
+            "getHoldability", "setHoldability", "getWarnings", "clearWarnings"));
+
+    /**
+     * {@link Statement} methods that return the results of the last execution.
+     */
+    private static final Set<String> RESULT_METHODS = new HashSet<>(Arrays.asList(
+            "getResultSet", "getMoreResults", "getUpdateCount", "getLargeUpdateCount", "getGeneratedKeys",
+            "getWarnings"));
+
+    /**
+     * {@link Statement} methods that are pipelined with the {@code ROLE}.
+     */
+    private static final Set<String> EXECUTE_METHODS = new HashSet<>(Arrays.asList(
+            "execute", "executeQuery", "executeUpdate", "executeLargeUpdate"));
+
+    /**
+     * Wrap the {@link Connection} and defer the {@code ROLE}.
+     *
+     * @param connection - the pooled {@link Connection}.
+     * @param roleName   - the {@code ROLE} to set before the first statement.
+     * @param roles      - the {@code ROLE} tracker or {@code null} if
+     *                   {@code ROLE} affinity is disabled.
+     * @return the wrapped {@link Connection}.
+     */
+    static Connection wrap(final Connection connection, final String roleName, final ConnectionRoleTracker roles) {
+        final DeferredRoleConnection handler = new DeferredRoleConnection(connection, roleName, roles);
+        handler.wrapper = proxy(Connection.class, handler);
+        return handler.wrapper;
+    }
+
+    private final Connection delegate;
+    private final String roleName;
+    private final ConnectionRoleTracker roles;
+    private Connection wrapper;
+    private boolean isPending = true;
+
+    private DeferredRoleConnection(final Connection delegate, final String roleName,
+            final ConnectionRoleTracker roles) {
+        this.delegate = delegate;
+        this.roleName = roleName;
+        this.roles = roles;
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return delegate.toString();
+            case "createStatement":
+                if (isPending && args == null) {
+                    return proxy(Statement.class, new StatementHandler(delegate.createStatement()));
+                }
+                break;
+            case "prepareStatement":
+                if (isPending && args.length == 1) {
+                    final String sql = (String) args[0];
+                    return proxy(PreparedStatement.class, new PreparedHandler(sql, delegate.prepareStatement(sql)));
+                }
+                break;
+            default:
+                break;
+        }
+        if (!LOCAL_METHODS.contains(method.getName())) {
+            applyRole();
+        }
+        return call(delegate, method, args);
+    }
+
+    /**
+     * Set the {@code ROLE} with a separate statement if still pending.
+     */
+    private void applyRole() throws SQLException {
+        if (!isPending) {
+            return;
+        }
+        beforeRole();
+        try {
+            PostgresRoleDAO.setRole(delegate, roleName);
+        } catch (final SQLException e) {
+            throw toRoleException(e);
+        }
+        afterRole();
+    }
+
+    /**
+     * Handle {@link Statement} methods that reach the pooled {@link Connection}.
+     * The wrapped {@link Connection} is returned so that the {@code ROLE} is
+     * never bypassed, and the {@code ROLE} is applied before the statement is
+     * unwrapped.
+     *
+     * @param statement - the wrapped {@link Statement}.
+     * @param method    - the called method.
+     * @param args      - the method arguments.
+     * @return the result of the method.
+     */
+    private Object callStatement(final Statement statement, final Method method, final Object[] args)
+            throws Throwable {
+        switch (method.getName()) {
+            case "getConnection":
+                return wrapper;
+            case "unwrap":
+                applyRole();
+                break;
+            default:
+                break;
+        }
+        return call(statement, method, args);
+    }
+
+    /**
+     * Execute the {@code ROLE} and the statement in a single batch. The first
+     * result belongs to {@code set_config} and is skipped.
+     *
+     * @param statement - the {@link Statement} to execute.
+     * @param name      - the name of the execute method that was called.
+     * @param sql       - the caller SQL or {@code null} if the statement is
+     *                  already prepared with the {@code ROLE}.
+     * @return the result expected by the execute method.
+     */
+    private Object executeWithRole(final Statement statement, final String name, final String sql)
+            throws SQLException {
+        beforeRole();
+        try {
+            if (sql == null) {
+                ((PreparedStatement) statement).execute();
+            } else {
+                statement.execute(withRole(sql));
+            }
+        } catch (final SQLException e) {
+            throw toBatchException(e);
+        }
+        afterRole();
+
+        final boolean isResultSet = statement.getMoreResults();
+        switch (name) {
+            case "executeQuery":
+                if (!isResultSet) {
+                    throw new SQLException("No results were returned by the query.", "02000");
+                }
+                return statement.getResultSet();
+            case "executeUpdate":
+            case "executeLargeUpdate":
+                if (isResultSet) {
+                    throw new SQLException("A result was returned when none was expected.", "0100E");
+                }
+                final long count = statement.getLargeUpdateCount();
+                return "executeUpdate".equals(name) ? (Object) (int) count : (Object) count;
+            default:
+                return isResultSet;
+        }
+    }
+
+    private void beforeRole() throws SQLException {
+        if (roles != null) {
+            roles.clear(delegate);
+        }
+    }
+
+    private void afterRole() throws SQLException {
+        isPending = false;
+        if (roles != null) {
+            roles.setRole(delegate, roleName);
+        }
+    }
+
+    private String withRole(final String sql) {
+        return PostgresRoleDAO.getSetRoleSql(roleName) + "; " + sql;
+    }
+
+    /**
+     * Map a {@code set_config} failure for this {@code ROLE} to a
+     * {@link RoleSecurityException} by its SQL State. Only used where
+     * {@code set_config} is the only statement that ran.
+     */
+    private SQLException toRoleException(final SQLException e) {
+        final String role = "role \"" + roleName + "\"";
+        if (INSUFFICIENT_PRIVILEGE.equals(e.getSQLState())) {
+            return new RoleSecurityException("permission denied to set " + role, e);
+        }
+        if (ROLE_ERRORS.contains(e.getSQLState())) {
+            return new RoleSecurityException(role + " does not exist", e);
+        }
+        return e;
+    }
+
+    /**
+     * A failed batch may have failed in {@code set_config} or in the caller SQL,
+     * and both can raise the same SQL State. For a {@code ROLE} error, the
+     * {@code ROLE} is set on its own to find out which: a
+     * {@link RoleSecurityException} if it fails, otherwise the caller error
+     * unchanged.
+     */
+    private SQLException toBatchException(final SQLException e) {
+        if (!ROLE_ERRORS.contains(e.getSQLState())) {
+            return e;
+        }
+        try {
+            applyRole();
+        } catch (final RoleSecurityException roleError) {
+            return roleError;
+        } catch (final SQLException other) {
+            e.addSuppressed(other);
+        }
+        return e;
+    }
+
+    /**
+     * Pipelines the {@code ROLE} with {@link Statement} methods that take SQL.
+     */
+    private final class StatementHandler implements InvocationHandler {
+
+        private final Statement statement;
+
+        private StatementHandler(final Statement statement) {
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            final String name = method.getName();
+            if (isPending && EXECUTE_METHODS.contains(name) && args.length == 1) {
+                return executeWithRole(statement, name, (String) args[0]);
+            }
+            if (name.startsWith("execute")) {
+                applyRole();
+            }
+            return callStatement(statement, method, args);
+        }
+    }
+
+    /**
+     * Pipelines the {@code ROLE} with the first execution of a
+     * {@link PreparedStatement}. Parameters are recorded while the {@code ROLE}
+     * is pending and replayed on a statement prepared with the {@code ROLE}.
+     */
+    private final class PreparedHandler implements InvocationHandler {
+
+        private final String sql;
+        private final PreparedStatement statement;
+        private final List<Object[]> parameters = new ArrayList<>();
+        private final List<Method> setters = new ArrayList<>();
+        private PreparedStatement statementWithRole;
+        private Statement active;
+
+        private PreparedHandler(final String sql, final PreparedStatement statement) {
+            this.sql = sql;
+            this.statement = statement;
+            this.active = statement;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            final String name = method.getName();
+            if (name.startsWith("set") || "clearParameters".equals(name)) {
+                final Object result = call(statement, method, args);
+                if (isPending) {
+                    setters.add(method);
+                    parameters.add(args);
+                }
+                return result;
+            }
+            if (EXECUTE_METHODS.contains(name) && args == null) {
+                if (isPending) {
+                    return executeWithRole(prepareWithRole(), name, null);
+                }
+                active = statement;
+            } else if (RESULT_METHODS.contains(name)) {
+                return call(active, method, args);
+            } else if ("close".equals(name) && statementWithRole != null) {
+                statementWithRole.close();
+            } else if (name.startsWith("execute")) {
+                applyRole();
+            }
+            return callStatement(statement, method, args);
+        }
+
+        private PreparedStatement prepareWithRole() throws Throwable {
+            if (statementWithRole != null) {
+                statementWithRole.close();
+            }
+            statementWithRole = delegate.prepareStatement(withRole(sql));
+            for (int i = 0; i < setters.size(); i++) {
+                call(statementWithRole, setters.get(i), parameters.get(i));
+            }
+            setters.clear();
+            parameters.clear();
+            active = statementWithRole;
+            return statementWithRole;
+        }
+    }
+
+    private static <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(DeferredRoleConnection.class.getClassLoader(),
+                new Class<?>[] { type }, handler));
+    }
+
+    private static Object call(final Object target, final Method method, final Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (final InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.adonix.postrise;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link PostriseMetrics} implementation that keeps histograms in memory
+ * without any external dependency. Each measurement is kept per metric name,
+ * database and {@code ROLE}.
+ * <p>
+ * Histograms use power-of-two buckets, so percentiles are accurate to within a
+ * factor of two. This is suitable for finding where checkout latency goes, not
+ * for exact reporting.
+ */
+public final class InMemoryMetrics implements PostriseMetrics {
+
+    /** Time spent waiting for a connection from the pool. */
+    public static final String BORROW_WAIT = "postrise.borrow.wait";
+
+    /** Time between getting and closing a connection. */
+    public static final String HOLD_TIME = "postrise.hold.time";
+
+    /** Time spent in {@code SET ROLE} or {@code RESET ROLE}. */
+    public static final String ROLE_SWITCH = "postrise.role.switch";
+
+    /** Backoff before retrying a failed transaction. */
+    public static final String TRANSACTION_RETRY = "postrise.transaction.retry";
+
+    /** Time spent creating a data source. */
+    public static final String CREATE = "postrise.create";
+
+    /** Number of failed data source creations. */
+    public static final String CREATE_FAILURE = "postrise.create.failure";
+
+    /** Time spent by listeners handling events. */
+    public static final String LISTENER = "postrise.listener";
+
+    private final Map<Key, Histogram> histograms = new ConcurrentHashMap<>();
+
+    @Override
+    public void recordBorrowWait(final String databaseName, final long nanos) {
+        record(BORROW_WAIT, databaseName, null, nanos);
+    }
+
+    @Override
+    public void recordHoldTime(final String databaseName, final String roleName, final long nanos) {
+        record(HOLD_TIME, databaseName, roleName, nanos);
+    }
+
+    @Override
+    public void recordRoleSwitch(final String databaseName, final String roleName, final long nanos) {
+        record(ROLE_SWITCH, databaseName, roleName, nanos);
+    }
+
+    @Override
+    public void recordTransactionRetry(final String databaseName, final String roleName, final long nanos) {
+        record(TRANSACTION_RETRY, databaseName, roleName, nanos);
+    }
+
+    @Override
+    public void recordCreate(final String databaseName, final long nanos) {
+        record(CREATE, databaseName, null, nanos);
+    }
+
+    @Override
+    public void recordCreateFailure(final String databaseName) {
+        record(CREATE_FAILURE, databaseName, null, 0);
+    }
+
+    @Override
+    public void recordListener(final String databaseName, final String event, final long nanos) {
+        record(LISTENER, databaseName, event, nanos);
+    }
+
+    /**
+     * Get the histogram for the metric.
+     * 
+     * @param name         - the metric name, for example {@link #BORROW_WAIT}.
+     * @param databaseName - the name of the database.
+     * @param tag          - the {@code ROLE}, the event name for
+     *                     {@link #LISTENER}, or {@code null}.
+     * @return the {@link Histogram}, empty if nothing was recorded.
+     */
+    public Histogram getHistogram(final String name, final String databaseName, final String tag) {
+        final Histogram histogram = histograms.get(new Key(name, databaseName, tag));
+        return histogram == null ? new Histogram() : histogram;
+    }
+
+    /**
+     * Remove all recorded measurements.
+     */
+    public void clear() {
+        histograms.clear();
+    }
+
+    private void record(final String name, final String databaseName, final String tag, final long nanos) {
+        histograms.computeIfAbsent(new Key(name, databaseName, tag), key -> new Histogram()).record(nanos);
+    }
+
+    /**
+     * A thread-safe histogram of durations in nanoseconds.
+     */
+    public static final class Histogram {
+
+        private static final int BUCKETS = 64;
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        private Histogram() {
+        }
+
+        private void record(final long nanos) {
+            final long value = Math.max(0, nanos);
+            count.increment();
+            total.add(value);
+            max.accumulate(value);
+            buckets.incrementAndGet(bucket(value));
+        }
+
+        /**
+         * Bucket {@code i} holds values from {@code 2^i} to {@code 2^(i+1) - 1}.
+         */
+        private static int bucket(final long value) {
+            return value == 0 ? 0 : BUCKETS - 1 - Long.numberOfLeadingZeros(value);
+        }
+
+        /**
+         * @return the number of measurements.
+         */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * @return the sum of all measurements in nanoseconds.
+         */
+        public long getTotalNanos() {
+            return total.sum();
+        }
+
+        /**
+         * @return the largest measurement in nanoseconds.
+         */
+        public long getMaxNanos() {
+            return max.get();
+        }
+
+        /**
+         * @return the average measurement in nanoseconds.
+         */
+        public long getMeanNanos() {
+            final long n = getCount();
+            return n == 0 ? 0 : getTotalNanos() / n;
+        }
+
+        /**
+         * The upper bound of the bucket containing the percentile.
+         * 
+         * @param percentile - the percentile between 0 and 1, for example 0.99.
+         * @return the percentile in nanoseconds, accurate to within a factor of
+         *         two.
+         */
+        public long getPercentileNanos(final double percentile) {
+            final long n = getCount();
+            if (n == 0) {
+                return 0;
+            }
+            final long rank = (long) Math.ceil(percentile * n);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(getMaxNanos(), i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1);
+                }
+            }
+            return getMaxNanos();
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + getCount() + " mean=" + getMeanNanos() + "ns p99=" + getPercentileNanos(0.99)
+                    + "ns max=" + getMaxNanos() + "ns";
+        }
+    }
+
+    private static final class Key {
+        private final String name;
+        private final String databaseName;
+        private final String tag;
+
+        private Key(final String name, final String databaseName, final String tag) {
+            this.name = name;
+            this.databaseName = databaseName;
+            this.tag = tag;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return name.equals(other.name) && Objects.equals(databaseName, other.databaseName)
+                    && Objects.equals(tag, other.tag);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, databaseName, tag);
+        }
+    }
+}
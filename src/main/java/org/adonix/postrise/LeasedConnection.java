@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.adonix.postrise;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A {@link Connection} wrapper that records the hold time and releases the
+ * checkout permit when the connection is closed and returned to the pool. With
+ * a session reset, the connection is reset and returned on a background thread.
+ */
+final class LeasedConnection implements InvocationHandler {
+
+    /**
+     * Wrap the {@link Connection} to record its hold time.
+     *
+     * @param pooled       - the {@link Connection} borrowed from the pool.
+     * @param connection   - the {@link Connection} to wrap, either the pooled
+     *                     connection or a wrapper of it.
+     * @param databaseName - the name of the database.
+     * @param roleName     - the {@code ROLE} of the connection or {@code null}.
+     * @param metrics      - the {@link PostriseMetrics} to receive the hold time.
+     * @param gate         - the {@link CheckoutGate} holding a permit for the
+     *                     connection or {@code null}.
+     * @param reset        - the {@link SessionResetPipeline} to run on close or
+     *                     {@code null}.
+     * @return the wrapped {@link Connection}.
+     */
+    static Connection wrap(final Connection pooled, final Connection connection, final String databaseName,
+            final String roleName, final PostriseMetrics metrics, final CheckoutGate gate,
+            final SessionResetPipeline reset) {
+        return (Connection) Proxy.newProxyInstance(LeasedConnection.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                new LeasedConnection(pooled, connection, databaseName, roleName, metrics, gate, reset));
+    }
+
+    private final Connection pooled;
+    private final Connection delegate;
+    private final String databaseName;
+    private final String roleName;
+    private final PostriseMetrics metrics;
+    private final CheckoutGate gate;
+    private final SessionResetPipeline reset;
+    private final long start = System.nanoTime();
+    private boolean isClosed;
+
+    private LeasedConnection(final Connection pooled, final Connection delegate, final String databaseName,
+            final String roleName, final PostriseMetrics metrics, final CheckoutGate gate,
+            final SessionResetPipeline reset) {
+        this.pooled = pooled;
+        this.delegate = delegate;
+        this.databaseName = databaseName;
+        this.roleName = roleName;
+        this.metrics = metrics;
+        this.gate = gate;
+        this.reset = reset;
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return delegate.toString();
+            case "close":
+                if (!isClosed) {
+                    isClosed = true;
+                    metrics.recordHoldTime(databaseName, roleName, System.nanoTime() - start);
+                    return close();
+                }
+                if (reset != null) {
+                    return null;
+                }
+                break;
+            case "isClosed":
+                if (isClosed && reset != null) {
+                    return true;
+                }
+                break;
+            default:
+                // The connection may still be resetting on the background thread.
+                if (isClosed && reset != null) {
+                    throw new SQLException("Connection is closed", "08003");
+                }
+                break;
+        }
+        try {
+            return method.invoke(delegate, args);
+        } catch (final InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Return the connection to the pool before releasing the permit, so the next
+     * thread admitted by the gate finds it idle.
+     */
+    private Object close() throws SQLException {
+        if (reset != null) {
+            reset.release(pooled, delegate, this::release);
+            return null;
+        }
+        try {
+            delegate.close();
+        } finally {
+            release();
+        }
+        return null;
+    }
+
+    private void release() {
+        if (gate != null) {
+            gate.release();
+        }
+    }
+}
@@ -41,7 +41,9 @@ public abstract class PostgresDataSource extends PostriseDataSource {
 
     @Override
     final String getJdbcUrl(final Server server) {
-        return JDBC_POSTGRES_PREFIX + server.getHostName() + ":" + server.getPort() + "/" + getDatabaseName();
+        final String hosts = server instanceof PostgresServer ? ((PostgresServer) server).getJdbcHosts()
+                : server.getHostName() + ":" + server.getPort();
+        return JDBC_POSTGRES_PREFIX + hosts + "/" + getDatabaseName();
     }
 
     @Override
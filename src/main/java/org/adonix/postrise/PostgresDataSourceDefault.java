@@ -18,6 +18,7 @@ package org.adonix.postrise;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Set;
 import org.adonix.postrise.security.PostgresRoleDAO;
 
 /**
@@ -25,6 +26,8 @@ import org.adonix.postrise.security.PostgresRoleDAO;
  */
 final class PostgresDataSourceDefault extends PostgresDataSource {
 
+    private final ConnectionRoleTracker roles = new ConnectionRoleTracker();
+
     /**
      * The package-private constructor.
      * 
@@ -38,42 +41,162 @@ final class PostgresDataSourceDefault extends PostgresDataSource {
     @Override
     public Connection getConnection(final String roleName) throws SQLException {
         Guard.check("roleName", roleName);
-        final Connection connection = super.getConnection();
+        final Connection connection = borrow();
         try {
             getRoleSecurity().onSetRole(connection, roleName);
-            PostgresRoleDAO.setRole(connection, roleName);
-            return connection;
+            if (isDeferredRole()) {
+                return lease(connection, deferRole(connection, roleName), roleName);
+            }
+            setRole(connection, roleName);
+            return lease(connection, trackRole(connection), roleName);
         } catch (final Exception e) {
-            connection.close();
+            giveBack(connection);
             throw e;
         }
     }
 
     @Override
-    public Connection getConnection() throws SQLException {
-        final Connection connection = super.getConnection();
+    Connection leaseWithoutRole(final Connection connection) throws SQLException {
         try {
             resetRole(connection);
-            return connection;
+            return lease(connection, trackRole(connection), null);
         } catch (final Exception e) {
-            connection.close();
+            giveBack(connection);
             throw e;
         }
     }
 
+    /**
+     * With {@code ROLE} affinity enabled, wrap the {@link Connection} to track
+     * {@code ROLE} changes by the caller. Otherwise the lease is not tracked, so
+     * forget that a {@code ROLE} session reset left no {@code ROLE} set.
+     * 
+     * @see #isRoleAffinity()
+     */
+    @Override
+    Connection trackRole(final Connection connection) throws SQLException {
+        if (isRoleAffinity()) {
+            return RoleTrackingConnection.wrap(connection, connection, roles);
+        }
+        if (isRoleReset()) {
+            roles.clear(connection);
+        }
+        return connection;
+    }
+
+    /**
+     * Forget the tracked {@code ROLE} of every connection when {@code ROLE}
+     * affinity is disabled, because leases are no longer tracked, or when the
+     * session reset changes.
+     */
+    @Override
+    void forgetRoles() {
+        roles.clearAll();
+    }
+
+    /**
+     * Set the {@code ROLE} on the {@link Connection}. With {@code ROLE} affinity
+     * enabled, the statement is skipped if the connection is already in the
+     * {@code ROLE}.
+     * 
+     * @see #isRoleAffinity()
+     */
+    private void setRole(final Connection connection, final String roleName) throws SQLException {
+        if (!isRoleAffinity()) {
+            timeRole(roleName, () -> PostgresRoleDAO.setRole(connection, roleName));
+            return;
+        }
+        if (roles.isRole(connection, roleName)) {
+            return;
+        }
+        roles.clear(connection);
+        timeRole(roleName, () -> PostgresRoleDAO.setRole(connection, roleName));
+        roles.setRole(connection, roleName);
+    }
+
+    /**
+     * Wrap the {@link Connection} to send the {@code ROLE} with the first
+     * statement. With {@code ROLE} affinity enabled, the {@code ROLE} is not sent
+     * if the connection is already in the {@code ROLE}, and the lease is tracked
+     * either way.
+     * 
+     * @see #isDeferredRole()
+     * @see DeferredRoleConnection
+     */
+    private Connection deferRole(final Connection connection, final String roleName) throws SQLException {
+        if (!isRoleAffinity()) {
+            return DeferredRoleConnection.wrap(trackRole(connection), roleName, null);
+        }
+        if (roles.isRole(connection, roleName)) {
+            return trackRole(connection);
+        }
+        return RoleTrackingConnection.wrap(connection, DeferredRoleConnection.wrap(connection, roleName, roles), roles);
+    }
+
     /**
      * Any {@link Connection} returned to the pool retains previous {@code SET ROLE}
      * which could cause unexpected permission errors when the connection is
      * re-used. {@code RESET ROLE} when getting a {@link Connection} from the pool
      * unless a {@code ROLE} is provided via
      * {@link #getConnection(String roleName)}.
+     * <p>
+     * The statement is skipped if the connection is known to have no
+     * {@code ROLE} set: with {@code ROLE} affinity enabled because it was last
+     * leased without a {@code ROLE} and the caller did not change the
+     * {@code ROLE}, and either way after a completed {@link SessionReset#ROLE}
+     * reset.
      * 
      * @see #getConnection()
+     * @see RoleTrackingConnection
      * @see <a href=
      *      "https://github.com/brettwooldridge/HikariCP/wiki/Pool-Analysis">HikariCP
      *      Pool Analysis</a>
      */
     private void resetRole(final Connection connection) throws SQLException {
-        PostgresRoleDAO.resetRole(connection);
+        if (!isRoleAffinity()) {
+            if (!isRoleReset() || !roles.take(connection, null)) {
+                timeRole(null, () -> PostgresRoleDAO.resetRole(connection));
+            }
+            return;
+        }
+        if (roles.isRole(connection, null)) {
+            return;
+        }
+        roles.clear(connection);
+        timeRole(null, () -> PostgresRoleDAO.resetRole(connection));
+        roles.setRole(connection, null);
+    }
+
+    /**
+     * Record that the connection has no {@code ROLE} set after a session reset
+     * that reverted the {@code ROLE}. Without {@code ROLE} affinity, the record
+     * is taken by the next lease.
+     */
+    @Override
+    void afterSessionReset(final Connection connection, final Set<SessionReset> stages) throws SQLException {
+        if (stages.contains(SessionReset.ROLE)) {
+            roles.setRole(connection, null);
+        }
+    }
+
+    private boolean isRoleReset() {
+        return getSessionReset().contains(SessionReset.ROLE);
+    }
+
+    /**
+     * A {@code ROLE} statement sent to the database.
+     */
+    @FunctionalInterface
+    private interface RoleStatement {
+        void execute() throws SQLException;
+    }
+
+    /**
+     * Execute the {@code ROLE} statement and record the round trip time.
+     */
+    private void timeRole(final String roleName, final RoleStatement statement) throws SQLException {
+        final long start = System.nanoTime();
+        statement.execute();
+        getMetrics().recordRoleSwitch(getDatabaseName(), roleName, System.nanoTime() - start);
     }
 }
@@ -17,6 +17,8 @@
 package org.adonix.postrise;
 
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.stream.Stream;
 
 /**
  * If PostgreSQL roles are not being used by the application, performance will
@@ -41,4 +43,43 @@ public final class PostgresDataSourceNoRoles extends PostgresDataSource {
     public Connection getConnection(final String roleName) {
         throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support roles");
     }
+
+    @Override
+    public <T> T inTransaction(final String roleName, final TransactionCallback<T> work) throws SQLException {
+        checkNoRole(roleName);
+        return super.inTransaction(roleName, work);
+    }
+
+    @Override
+    public <T> T inTransaction(final String roleName, final int isolation, final TransactionCallback<T> work)
+            throws SQLException {
+        checkNoRole(roleName);
+        return super.inTransaction(roleName, isolation, work);
+    }
+
+    @Override
+    public BulkCopy copy(final String roleName) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support roles");
+    }
+
+    @Override
+    public WriteBehindQueue getWriteBehind(final String roleName) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support roles");
+    }
+
+    @Override
+    public <T> Stream<T> stream(final String roleName, final String sql, final RowMapper<T> mapper,
+            final Object... parameters) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support roles");
+    }
+
+    /**
+     * Transactions run as the {@code LOGIN} user, so only a {@code null}
+     * {@code ROLE} is accepted.
+     */
+    private void checkNoRole(final String roleName) {
+        if (roleName != null) {
+            throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support roles");
+        }
+    }
 }
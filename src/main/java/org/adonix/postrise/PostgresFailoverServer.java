@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.adonix.postrise;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.postgresql.core.BaseConnection;
+import org.postgresql.util.HostSpec;
+
+/**
+ * A PostgreSQL {@link Server} for a primary with standby hosts. New connections
+ * are only opened to the host that is currently the primary, so a promoted
+ * standby is used without waiting for DNS changes.
+ * <p>
+ * The primary is probed with {@code pg_is_in_recovery()} every
+ * {@link #getFailoverProbeInterval()} once the first data source is created.
+ * The probe uses its own connection outside the pool, so it runs even when
+ * every pooled connection is busy, and each server probes on its own thread.
+ * When the probe finds a standby, reconnects to a different host, or fails
+ * {@link #getFailoverProbeFailures()} times in a row, all data sources are
+ * created again in the background on the new primary, with the usual
+ * {@code beforeClose}, {@code afterClose}, {@code beforeCreate} and
+ * {@code afterCreate} events. Requests during the rebuild wait for the new data
+ * source, and the replaced data sources are closed once their active
+ * connections are returned. The connect timeout of each host, and the socket
+ * timeout of the probe, are limited to the probe interval, so an unreachable
+ * host never delays recovery by a TCP timeout.
+ */
+public abstract class PostgresFailoverServer extends PostgresServer {
+
+    private static final Logger LOGGER = LogManager.getLogger(PostgresFailoverServer.class);
+
+    private final Lock probeLock = new ReentrantLock();
+    private volatile ScheduledExecutorService prober;
+
+    // Only used on the probe thread.
+    private Connection probeConnection;
+    private HostSpec primaryHost;
+    private int probeFailures;
+
+    /**
+     * Construct a new {@link PostgresFailoverServer} instance.
+     */
+    protected PostgresFailoverServer() {
+        super();
+    }
+
+    /**
+     * The primary and standby hosts in order of preference. Called each time a
+     * data source is created.
+     *
+     * @return the hosts that may become the primary.
+     */
+    protected abstract List<PostgresHost> getHosts();
+
+    /**
+     * The interval between checks of the primary. Default: 1 second
+     *
+     * @return the interval between checks of the primary.
+     */
+    protected Duration getFailoverProbeInterval() {
+        return Duration.ofSeconds(1);
+    }
+
+    /**
+     * The number of consecutive failed checks of the primary before the data
+     * sources are rebuilt. A single failure may be a busy primary or a brief
+     * network error. Default: 3
+     *
+     * @return the number of consecutive failed checks before a rebuild.
+     */
+    protected int getFailoverProbeFailures() {
+        return 3;
+    }
+
+    /**
+     * @return the host name of the first host.
+     */
+    @Override
+    public String getHostName() {
+        return getHosts().get(0).getHostName();
+    }
+
+    /**
+     * @return the port of the first host.
+     */
+    @Override
+    public Integer getPort() {
+        return getHosts().get(0).getPort();
+    }
+
+    @Override
+    final String getJdbcHosts() {
+        return getHosts().stream().map(PostgresHost::toString).collect(Collectors.joining(","));
+    }
+
+    @Override
+    protected PostgresDataSource createDataSource(final String databaseName) {
+        final PostgresDataSource dataSource = super.createDataSource(databaseName);
+        dataSource.addDataSourceProperty("targetServerType", "primary");
+        dataSource.addDataSourceProperty("connectTimeout", getTimeoutSeconds());
+        startProbe();
+        return dataSource;
+    }
+
+    /**
+     * Start checking the primary. Subsequent calls have no effect.
+     */
+    private void startProbe() {
+        if (prober != null) {
+            return;
+        }
+        probeLock.lock();
+        try {
+            if (prober == null) {
+                final long interval = getFailoverProbeInterval().toNanos();
+                prober = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("postrise-failover-probe"));
+                prober.scheduleWithFixedDelay(() -> runCatch(this::probe), interval, interval, TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            probeLock.unlock();
+        }
+    }
+
+    private void probe() {
+        try {
+            checkOpen();
+        } catch (final IllegalStateException e) {
+            closeProbeConnection();
+            prober.shutdown();
+            return;
+        }
+        final ConnectionProvider dataSource = getAnyDataSource();
+        if (dataSource == null) {
+            return;
+        }
+        try {
+            if (probeConnection == null) {
+                probeConnection = dataSource.connect(getProbeProperties());
+                final HostSpec host = probeConnection.unwrap(BaseConnection.class).getQueryExecutor().getHostSpec();
+                if (primaryHost == null) {
+                    primaryHost = host;
+                } else if (!primaryHost.equals(host)) {
+                    LOGGER.warn("{}: the primary moved from {} to {}", this, primaryHost, host);
+                    rebuild();
+                    return;
+                }
+            }
+            try (final Statement stmt = probeConnection.createStatement();
+                    final ResultSet rs = stmt.executeQuery("SELECT pg_is_in_recovery()")) {
+                rs.next();
+                if (!rs.getBoolean(1)) {
+                    probeFailures = 0;
+                    return;
+                }
+            }
+            LOGGER.warn("{}: {} is no longer the primary", this, primaryHost);
+        } catch (final SQLException e) {
+            LOGGER.warn("{}: primary check failed for {}: {}", this, primaryHost, e.getMessage());
+            closeProbeConnection();
+            if (++probeFailures < getFailoverProbeFailures()) {
+                return;
+            }
+        }
+        rebuild();
+    }
+
+    private void rebuild() {
+        closeProbeConnection();
+        primaryHost = null;
+        probeFailures = 0;
+        rebuildDataSources();
+    }
+
+    private void closeProbeConnection() {
+        if (probeConnection != null) {
+            runCatch(probeConnection::close);
+            probeConnection = null;
+        }
+    }
+
+    /**
+     * A hung primary fails the probe within one interval instead of blocking it.
+     */
+    private Properties getProbeProperties() {
+        final Properties properties = new Properties();
+        properties.setProperty("connectTimeout", Integer.toString(getTimeoutSeconds()));
+        properties.setProperty("socketTimeout", Integer.toString(getTimeoutSeconds()));
+        properties.setProperty("ApplicationName", "postrise-failover-probe");
+        return properties;
+    }
+
+    private int getTimeoutSeconds() {
+        return (int) Math.max(1, getFailoverProbeInterval().toSeconds());
+    }
+}
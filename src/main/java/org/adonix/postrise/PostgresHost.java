@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.adonix.postrise;
+
+import java.util.Objects;
+
+/**
+ * The host name and port of a PostgreSQL server.
+ */
+public final class PostgresHost {
+
+    private final String hostName;
+    private final int port;
+
+    /**
+     * Create a PostgreSQL host on the default port.
+     *
+     * @param hostName - the host name or IP address.
+     */
+    public PostgresHost(final String hostName) {
+        this(hostName, PostgresServer.POSTGRES_DEFAULT_PORT);
+    }
+
+    /**
+     * Create a PostgreSQL host.
+     *
+     * @param hostName - the host name or IP address.
+     * @param port     - the port.
+     */
+    public PostgresHost(final String hostName, final int port) {
+        Guard.check("hostName", hostName);
+        if (port < 1 || port > 65535) {
+            throw new IllegalArgumentException("Illegal port " + port);
+        }
+        this.hostName = hostName.trim();
+        this.port = port;
+    }
+
+    /**
+     * @return the host name or IP address.
+     */
+    public String getHostName() {
+        return hostName;
+    }
+
+    /**
+     * @return the port.
+     */
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof PostgresHost)) {
+            return false;
+        }
+        final PostgresHost host = (PostgresHost) other;
+        return port == host.port && hostName.equals(host.hostName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(hostName, port);
+    }
+
+    @Override
+    public String toString() {
+        return hostName + ":" + port;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.adonix.postrise;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A PostgreSQL {@link Server} with read replicas. Connections from
+ * {@link #getConnection(String)} always use the primary. Connections from
+ * {@link #getReadConnection(String)} use the least loaded replica within
+ * {@link #getMaxReplicaLag()}, or the primary if no replica qualifies.
+ * <p>
+ * Replica data sources send the same events as primary data sources to the
+ * listeners of this server, so they are configured identically. Replica data
+ * sources are always {@link PostgresDataSource} default implementations.
+ */
+public class PostgresReplicaServer extends PostgresServer {
+
+    private final Lock replicaLock = new ReentrantLock();
+    private volatile List<Replica> replicas;
+
+    /**
+     * Construct a new {@link PostgresReplicaServer} instance.
+     */
+    public PostgresReplicaServer() {
+        super();
+    }
+
+    /**
+     * The read replicas of the primary server. Called once, on the first read
+     * request. Default: none (all reads use the primary)
+     *
+     * @return the hosts of the read replicas.
+     */
+    protected List<PostgresHost> getReplicaHosts() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * The maximum replication lag of a replica used for reads. Replicas behind
+     * the primary by more than this are skipped until they catch up. Default: 5
+     * seconds
+     *
+     * @return the maximum replication lag for reads.
+     */
+    protected Duration getMaxReplicaLag() {
+        return Duration.ofSeconds(5);
+    }
+
+    /**
+     * The interval between replication lag measurements of each replica. An
+     * unavailable replica is retried after this interval. Default: 1 second
+     *
+     * @return the interval between replication lag measurements.
+     */
+    protected Duration getReplicaProbeInterval() {
+        return Duration.ofSeconds(1);
+    }
+
+    /**
+     * Get a read-only {@link Connection} from the least loaded replica within
+     * the lag limit, or from the primary if no replica qualifies. A primary
+     * connection is read-write again once it is returned to the pool.
+     *
+     * @param databaseName - the name of the database.
+     * @return a {@link Connection} for reads.
+     * @throws SQLException if a database access error occurs.
+     */
+    public final Connection getReadConnection(final String databaseName) throws SQLException {
+        final DataSourceContext replica = getReadDataSource(databaseName);
+        return replica == null ? ReadOnlyConnection.wrap(getConnection(databaseName))
+                : readOnly(replica.getConnection());
+    }
+
+    /**
+     * Get a read-only {@link Connection} with the {@code ROLE} from the least
+     * loaded replica within the lag limit, or from the primary if no replica
+     * qualifies.
+     *
+     * @param databaseName - the name of the database.
+     * @param roleName     - the {@code ROLE} to set on the connection.
+     * @return a {@link Connection} for reads.
+     * @throws SQLException if a database access error occurs.
+     */
+    public final Connection getReadConnection(final String databaseName, final String roleName)
+            throws SQLException {
+        final DataSourceContext replica = getReadDataSource(databaseName);
+        return replica == null ? ReadOnlyConnection.wrap(getConnection(databaseName, roleName))
+                : readOnly(replica.getConnection(roleName));
+    }
+
+    /**
+     * Replica data sources have the driver enforce read-only in auto-commit mode
+     * as well.
+     */
+    private static Connection readOnly(final Connection connection) throws SQLException {
+        try {
+            connection.setReadOnly(true);
+            return connection;
+        } catch (final SQLException | RuntimeException e) {
+            try {
+                connection.close();
+            } catch (final SQLException close) {
+                e.addSuppressed(close);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Choose the replica data source with the lowest in-flight load, preferring
+     * the lowest lag on a tie.
+     */
+    private DataSourceContext getReadDataSource(final String databaseName) {
+        Guard.check("databaseName", databaseName);
+        checkOpen();
+        final long maxLagMillis = getMaxReplicaLag().toMillis();
+        DataSourceContext best = null;
+        double bestLoad = Double.MAX_VALUE;
+        long bestLag = Long.MAX_VALUE;
+        for (final Replica replica : getReplicas()) {
+            final DataSourceContext dataSource = replica.getReadDataSource(databaseName, maxLagMillis);
+            if (dataSource == null) {
+                continue;
+            }
+            final double load = getLoad(dataSource);
+            final long lag = replica.getLagMillis();
+            if (load < bestLoad || (load == bestLoad && lag < bestLag)) {
+                best = dataSource;
+                bestLoad = load;
+                bestLag = lag;
+            }
+        }
+        return best;
+    }
+
+    private static double getLoad(final DataSourceContext dataSource) {
+        final int inFlight = dataSource.getActiveConnections() + dataSource.getThreadsAwaitingConnection();
+        return (double) inFlight / Math.max(1, dataSource.getMaxPoolSize());
+    }
+
+    private List<Replica> getReplicas() {
+        if (replicas == null) {
+            replicaLock.lock();
+            try {
+                if (replicas == null) {
+                    replicas = createReplicas();
+                }
+            } finally {
+                replicaLock.unlock();
+            }
+        }
+        return replicas;
+    }
+
+    private List<Replica> createReplicas() {
+        // A replica created after close started would never be closed.
+        checkOpen();
+        final List<Replica> created = new ArrayList<>();
+        for (final PostgresHost host : getReplicaHosts()) {
+            created.add(new Replica(this, host));
+        }
+        return Collections.unmodifiableList(created);
+    }
+
+    @Override
+    final Collection<? extends PostriseServer> getChildServers() {
+        replicaLock.lock();
+        try {
+            return replicas == null ? Collections.emptyList() : replicas;
+        } finally {
+            replicaLock.unlock();
+        }
+    }
+}
@@ -48,6 +48,13 @@ public class PostgresServer extends PostriseServer {
         return POSTGRES_DEFAULT_PORT;
     }
 
+    /**
+     * @return the host list of the JDBC URL for new data sources.
+     */
+    String getJdbcHosts() {
+        return getHostName() + ":" + getPort();
+    }
+
     @Override
     protected PostgresDataSource createDataSource(final String databaseName) {
         return new PostgresDataSourceDefault(this, databaseName);
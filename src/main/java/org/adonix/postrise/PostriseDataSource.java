@@ -18,17 +18,100 @@ package org.adonix.postrise;
 
 import com.zaxxer.hikari.HikariDataSource;
 import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.pool.HikariPool;
 import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+import org.adonix.postrise.security.PostgresRoleDAO;
 import org.adonix.postrise.security.RoleSecurityListener;
 
 abstract class PostriseDataSource implements ConnectionProvider {
 
+    /**
+     * SQL State "serialization_failure".
+     */
+    private static final String SERIALIZATION_FAILURE = "40001";
+
+    /**
+     * SQL State "deadlock_detected".
+     */
+    private static final String DEADLOCK_DETECTED = "40P01";
+
+    /**
+     * SQL State "invalid_transaction_state".
+     */
+    private static final String INVALID_TRANSACTION_STATE = "25000";
+
+    /**
+     * Keep the transaction isolation level of the connection.
+     */
+    private static final int DEFAULT_ISOLATION = -1;
+
+    private static final long DEFAULT_TRANSACTION_RETRY_BACKOFF_MS = 10;
+
+    /**
+     * The ceiling of the exponential retry backoff, unless the base backoff is
+     * larger.
+     */
+    private static final long MAX_TRANSACTION_RETRY_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private static final int DEFAULT_WRITE_BEHIND_BATCH_SIZE = 1000;
+
+    private static final long DEFAULT_WRITE_BEHIND_FLUSH_INTERVAL_MS = 100;
+
+    private static final int DEFAULT_WRITE_BEHIND_CAPACITY = 10000;
+
+    private static final Executor RESIZE_EXECUTOR = Executors
+            .newCachedThreadPool(new DaemonThreadFactory("postrise-resize"));
+
     private final HikariDataSource delegate;
     private final String databaseName;
     private RoleSecurityListener roleSecurity;
+    private boolean isRoleAffinity;
+    private boolean isDeferredRole;
+    private volatile long lastUsed = System.nanoTime();
+    private volatile int maxPoolSizeLimit;
+    private PostriseMetrics metrics = PostriseMetrics.NONE;
+    private boolean isAdaptivePoolSize;
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder borrowWaitNanos = new LongAdder();
+    private final Lock resizeLock = new ReentrantLock();
+    private final CheckoutGate gate;
+    private volatile boolean isFairCheckout;
+
+    /**
+     * Borrowed connections holding a permit of the gate. The permit is released
+     * for exactly these connections, so changing the fair checkout setting while
+     * connections are leased never leaks or adds a permit.
+     */
+    private final Set<Connection> permits = ConcurrentHashMap.newKeySet();
+    private SessionResetPipeline sessionReset;
+    private int maxTransactionRetries;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+    private long transactionRetryBackoffMs = DEFAULT_TRANSACTION_RETRY_BACKOFF_MS;
+    private final RetryBudget retryBudget = new RetryBudget();
+    private int writeBehindBatchSize = DEFAULT_WRITE_BEHIND_BATCH_SIZE;
+    private long writeBehindFlushIntervalMs = DEFAULT_WRITE_BEHIND_FLUSH_INTERVAL_MS;
+    private int writeBehindCapacity = DEFAULT_WRITE_BEHIND_CAPACITY;
+    private final Lock writeBehindLock = new ReentrantLock();
+    private final Map<String, WriteBehindQueue> writeBehind = new ConcurrentHashMap<>();
 
     /**
      * Subclass implementations need to provide a default security setting.
@@ -42,6 +125,7 @@ abstract class PostriseDataSource implements ConnectionProvider {
     PostriseDataSource(final Server server, final String databaseName) {
         this.databaseName = databaseName;
         this.delegate = new HikariDataSource();
+        this.gate = new CheckoutGate(delegate.getMaximumPoolSize());
         setJdbcUrl(server);
         setRoleSecurity(getDefaultRoleSecurity());
         setUsername(System.getProperty("user.name"));
@@ -73,9 +157,433 @@ abstract class PostriseDataSource implements ConnectionProvider {
 
     @Override
     public Connection getConnection() throws SQLException {
+        return leaseWithoutRole(borrow());
+    }
+
+    @Override
+    public final Connection getBackgroundConnection() throws SQLException {
+        return leaseWithoutRole(borrow(false));
+    }
+
+    /**
+     * Prepare a borrowed {@link Connection} to be returned to the caller without
+     * a {@code ROLE}. The connection is returned to the pool if it cannot be
+     * prepared.
+     *
+     * @param connection - the borrowed {@link Connection}.
+     * @return the {@link Connection} for the caller.
+     * @throws SQLException if a database access error occurs.
+     */
+    Connection leaseWithoutRole(final Connection connection) throws SQLException {
+        return lease(connection, null);
+    }
+
+    /**
+     * Get a {@link Connection} from the pool and record the wait time. With fair
+     * checkout enabled, the caller first waits for a permit. A borrowed
+     * connection must be passed to {@link #lease(Connection, String)} or
+     * {@link #giveBack(Connection)}.
+     *
+     * @return a pooled {@link Connection}.
+     * @throws SQLException if a database access error occurs.
+     */
+    final Connection borrow() throws SQLException {
+        return borrow(true);
+    }
+
+    /**
+     * @param isUse - {@code false} for background work that must not count as
+     *              use of this data source.
+     */
+    private Connection borrow(final boolean isUse) throws SQLException {
+        final long start = System.nanoTime();
+        if (isUse) {
+            lastUsed = start;
+        }
+        try {
+            if (!isFairCheckout) {
+                return delegate.getConnection();
+            }
+            final long timeoutMs = delegate.getConnectionTimeout();
+            gate.enter(databaseName, timeoutMs);
+            try {
+                final long waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                final Connection connection = getConnection(Math.max(0, timeoutMs - waitedMs));
+                permits.add(connection);
+                return connection;
+            } catch (final SQLException | RuntimeException e) {
+                gate.release();
+                throw e;
+            }
+        } finally {
+            final long wait = System.nanoTime() - start;
+            borrowCount.increment();
+            borrowWaitNanos.add(wait);
+            metrics.recordBorrowWait(databaseName, wait);
+        }
+    }
+
+    /**
+     * Get a {@link Connection} from the pool within the time left of the
+     * connection timeout after waiting at the gate, so a caller never waits for
+     * longer than the connection timeout in total. Before the pool is started, or
+     * once it is closed, the pool's own checkout is used.
+     */
+    private Connection getConnection(final long timeoutMs) throws SQLException {
+        final HikariPoolMXBean pool = delegate.getHikariPoolMXBean();
+        if (pool instanceof HikariPool && !delegate.isClosed()) {
+            return ((HikariPool) pool).getConnection(timeoutMs);
+        }
         return delegate.getConnection();
     }
 
+    /**
+     * Prepare a borrowed {@link Connection} to be returned to the caller. The
+     * hold time is recorded if metrics are enabled.
+     *
+     * @param connection - the borrowed {@link Connection}.
+     * @param roleName   - the {@code ROLE} of the connection or {@code null}.
+     * @return the {@link Connection} for the caller.
+     */
+    final Connection lease(final Connection connection, final String roleName) {
+        return lease(connection, connection, roleName);
+    }
+
+    /**
+     * Prepare a borrowed {@link Connection} that was wrapped by the data source
+     * to be returned to the caller. The session is reset on the borrowed
+     * {@link Connection} when the caller closes the wrapped {@link Connection}.
+     *
+     * @param pooled     - the borrowed {@link Connection}.
+     * @param connection - the wrapped {@link Connection}.
+     * @param roleName   - the {@code ROLE} of the connection or {@code null}.
+     * @return the {@link Connection} for the caller.
+     * @see #setSessionReset(SessionReset...)
+     */
+    final Connection lease(final Connection pooled, final Connection connection, final String roleName) {
+        final CheckoutGate permit = !permits.isEmpty() && permits.remove(pooled) ? gate : null;
+        if (metrics == PostriseMetrics.NONE && permit == null && sessionReset == null) {
+            return connection;
+        }
+        return LeasedConnection.wrap(pooled, connection, databaseName, roleName, metrics, permit, sessionReset);
+    }
+
+    /**
+     * Return a borrowed {@link Connection} that was never leased to the caller.
+     *
+     * @param connection - the borrowed {@link Connection}.
+     * @throws SQLException if a database access error occurs.
+     */
+    final void giveBack(final Connection connection) throws SQLException {
+        try {
+            connection.close();
+        } finally {
+            if (!permits.isEmpty() && permits.remove(connection)) {
+                gate.release();
+            }
+        }
+    }
+
+    @Override
+    public <T> T inTransaction(final String roleName, final TransactionCallback<T> work) throws SQLException {
+        return retryTransaction(roleName, DEFAULT_ISOLATION, work);
+    }
+
+    @Override
+    public <T> T inTransaction(final String roleName, final int isolation, final TransactionCallback<T> work)
+            throws SQLException {
+        switch (isolation) {
+            case Connection.TRANSACTION_READ_UNCOMMITTED:
+            case Connection.TRANSACTION_READ_COMMITTED:
+            case Connection.TRANSACTION_REPEATABLE_READ:
+            case Connection.TRANSACTION_SERIALIZABLE:
+                return retryTransaction(roleName, isolation, work);
+            default:
+                throw new IllegalArgumentException("Illegal isolation " + isolation);
+        }
+    }
+
+    private <T> T retryTransaction(final String roleName, final int isolation, final TransactionCallback<T> work)
+            throws SQLException {
+        Guard.check("work", work);
+        retryBudget.deposit();
+        for (int attempt = 0;; attempt++) {
+            try {
+                return runTransaction(roleName, isolation, work);
+            } catch (final SQLException e) {
+                if (attempt >= maxTransactionRetries || !isRetryable(e) || !retryBudget.withdraw()) {
+                    throw e;
+                }
+                final long backoff = getRetryBackoff(attempt);
+                metrics.recordTransactionRetry(databaseName, roleName, backoff);
+                sleep(backoff, e);
+            }
+        }
+    }
+
+    /**
+     * A serialization failure or deadlock rolls back the whole transaction, so
+     * it can be run again.
+     */
+    private static boolean isRetryable(final SQLException e) {
+        return SERIALIZATION_FAILURE.equals(e.getSQLState()) || DEADLOCK_DETECTED.equals(e.getSQLState());
+    }
+
+    /**
+     * Full jitter: a random delay up to the exponential backoff for the attempt,
+     * so callers that failed together do not retry together. The backoff stops
+     * growing at one second or the base backoff, whichever is larger.
+     */
+    private long getRetryBackoff(final int attempt) {
+        final long base = TimeUnit.MILLISECONDS.toNanos(transactionRetryBackoffMs);
+        final long cap = Math.max(base, MAX_TRANSACTION_RETRY_BACKOFF_NANOS);
+        // The shift is only safe while it keeps the sign bit clear.
+        final long max = attempt < Long.numberOfLeadingZeros(base) ? Math.min(base << attempt, cap) : cap;
+        return max <= 0 ? 0 : ThreadLocalRandom.current().nextLong(max);
+    }
+
+    private static void sleep(final long nanos, final SQLException cause) throws SQLException {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cause.addSuppressed(e);
+            throw cause;
+        }
+    }
+
+    /**
+     * Run the work once in a transaction on a newly borrowed connection. The
+     * connection is returned to the pool before this method returns.
+     */
+    private <T> T runTransaction(final String roleName, final int isolation, final TransactionCallback<T> work)
+            throws SQLException {
+        try (final Connection connection = beginTransaction(roleName, false, isolation)) {
+            try {
+                final TransactionConnection transaction = TransactionConnection.wrap(connection);
+                final T result = work.execute(transaction.getConnection());
+                if (transaction.isUnwrapped() && roleName != null) {
+                    checkRole(connection, roleName);
+                }
+                connection.commit();
+                return result;
+            } catch (final Exception e) {
+                rollback(connection, e);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * SQL such as {@code COMMIT} sent through the underlying connection ends the
+     * transaction and its {@code ROLE}, and the driver starts a new transaction
+     * as the {@code LOGIN} user on the next statement. Work done since then is
+     * rolled back instead of committed.
+     */
+    private static void checkRole(final Connection connection, final String roleName) throws SQLException {
+        if (!PostgresRoleDAO.isRole(connection, roleName)) {
+            throw new SQLException("The transaction for ROLE \"" + roleName + "\" was ended by the callback",
+                    INVALID_TRANSACTION_STATE);
+        }
+    }
+
+    /**
+     * Lease a {@link Connection} with an open transaction. A {@code ROLE} is set
+     * with {@code set_config(..., true)} as the first statement, so it ends with
+     * the transaction. Without a {@code ROLE}, the connection is prepared as by
+     * {@link #getConnection()}.
+     *
+     * @param roleName   - the {@code ROLE} for the transaction or {@code null}.
+     * @param isReadOnly - {@code true} for a read-only transaction.
+     * @return the leased {@link Connection} with auto-commit disabled.
+     * @throws SQLException if a database access error occurs.
+     */
+    final Connection beginTransaction(final String roleName, final boolean isReadOnly) throws SQLException {
+        return beginTransaction(roleName, isReadOnly, DEFAULT_ISOLATION);
+    }
+
+    /**
+     * The isolation level is set before the {@code ROLE}, because it cannot be
+     * changed once the transaction has run a statement.
+     */
+    private Connection beginTransaction(final String roleName, final boolean isReadOnly, final int isolation)
+            throws SQLException {
+        if (roleName == null) {
+            final Connection leased = getConnection();
+            try {
+                leased.setAutoCommit(false);
+                leased.setReadOnly(isReadOnly);
+                setIsolation(leased, isolation);
+                return leased;
+            } catch (final SQLException | RuntimeException e) {
+                leased.close();
+                throw e;
+            }
+        }
+        final Connection connection = borrow();
+        final Connection leased;
+        try {
+            getRoleSecurity().onSetRole(connection, roleName);
+            connection.setAutoCommit(false);
+            connection.setReadOnly(isReadOnly);
+            setIsolation(connection, isolation);
+            leased = lease(connection, trackRole(connection), roleName);
+        } catch (final Exception e) {
+            giveBack(connection);
+            throw e;
+        }
+        try {
+            final long start = System.nanoTime();
+            PostgresRoleDAO.setLocalRole(connection, roleName);
+            metrics.recordRoleSwitch(databaseName, roleName, System.nanoTime() - start);
+            return leased;
+        } catch (final SQLException | RuntimeException e) {
+            rollback(connection, e);
+            leased.close();
+            throw e;
+        }
+    }
+
+    private static void setIsolation(final Connection connection, final int isolation) throws SQLException {
+        if (isolation != DEFAULT_ISOLATION) {
+            connection.setTransactionIsolation(isolation);
+        }
+    }
+
+    @Override
+    public <T> Stream<T> stream(final String sql, final RowMapper<T> mapper, final Object... parameters)
+            throws SQLException {
+        return openStream(null, sql, mapper, parameters);
+    }
+
+    @Override
+    public <T> Stream<T> stream(final String roleName, final String sql, final RowMapper<T> mapper,
+            final Object... parameters) throws SQLException {
+        Guard.check("roleName", roleName);
+        return openStream(roleName, sql, mapper, parameters);
+    }
+
+    @Override
+    public final BulkCopy copy() {
+        return new BulkCopy(this, null);
+    }
+
+    @Override
+    public BulkCopy copy(final String roleName) {
+        Guard.check("roleName", roleName);
+        return new BulkCopy(this, roleName);
+    }
+
+    @Override
+    public final WriteBehindQueue getWriteBehind() throws SQLException {
+        return openWriteBehind(null);
+    }
+
+    @Override
+    public WriteBehindQueue getWriteBehind(final String roleName) throws SQLException {
+        Guard.check("roleName", roleName);
+        return openWriteBehind(roleName);
+    }
+
+    /**
+     * Get or create the queue of the {@code ROLE}. The {@code LOGIN} user is
+     * keyed by an empty name, which is never a {@code ROLE}.
+     */
+    private WriteBehindQueue openWriteBehind(final String roleName) throws SQLException {
+        final String key = roleName == null ? "" : roleName;
+        final WriteBehindQueue queue = writeBehind.get(key);
+        if (queue != null) {
+            return queue;
+        }
+        writeBehindLock.lock();
+        try {
+            if (isClosed()) {
+                throw new SQLException(this + " - data source is closed");
+            }
+            return writeBehind.computeIfAbsent(key, k -> new WriteBehindQueue(this, roleName));
+        } finally {
+            writeBehindLock.unlock();
+        }
+    }
+
+    private <T> Stream<T> openStream(final String roleName, final String sql, final RowMapper<T> mapper,
+            final Object... parameters) throws SQLException {
+        Guard.check("sql", sql);
+        Guard.check("mapper", mapper);
+        Guard.check("parameters", parameters);
+        return QueryStream.open(beginTransaction(roleName, true), sql, fetchSize, mapper, parameters);
+    }
+
+    private static void rollback(final Connection connection, final Exception cause) {
+        try {
+            connection.rollback();
+        } catch (final SQLException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Wrap a borrowed {@link Connection} to track {@code ROLE} changes made by
+     * the caller during the lease.
+     *
+     * @param connection - the borrowed {@link Connection}.
+     * @return the wrapped {@link Connection}, or the same {@link Connection} if
+     *         this data source does not track the {@code ROLE}.
+     * @throws SQLException if a database access error occurs.
+     */
+    Connection trackRole(final Connection connection) throws SQLException {
+        return connection;
+    }
+
+    /**
+     * Forget any {@code ROLE} tracked for the pooled connections, called when
+     * {@code ROLE} affinity is disabled or the session reset changes.
+     */
+    void forgetRoles() {
+    }
+
+    @Override
+    public final void setMetrics(final PostriseMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the {@link PostriseMetrics} of the parent {@link Server}.
+     */
+    final PostriseMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public final long getLastUsed() {
+        return lastUsed;
+    }
+
+    @Override
+    public final long getBorrowCount() {
+        return borrowCount.sum();
+    }
+
+    @Override
+    public final long getBorrowWaitNanos() {
+        return borrowWaitNanos.sum();
+    }
+
+    @Override
+    public final Connection connect(final Properties overrides) throws SQLException {
+        // The driver only reads String values, e.g. an Integer connectTimeout.
+        final Properties properties = new Properties();
+        delegate.getDataSourceProperties().forEach((k, v) -> properties.setProperty(k.toString(), v.toString()));
+        if (delegate.getUsername() != null) {
+            properties.setProperty("user", delegate.getUsername());
+        }
+        if (delegate.getPassword() != null) {
+            properties.setProperty("password", delegate.getPassword());
+        }
+        overrides.forEach((k, v) -> properties.setProperty(k.toString(), v.toString()));
+        return DriverManager.getConnection(delegate.getJdbcUrl(), properties);
+    }
+
     @Override
     public final String getUsername() {
         return delegate.getUsername();
@@ -98,7 +606,48 @@ abstract class PostriseDataSource implements ConnectionProvider {
 
     @Override
     public final void setMaxPoolSize(final int size) {
-        delegate.setMaximumPoolSize(size);
+        resizeLock.lock();
+        try {
+            final int previous = delegate.getMaximumPoolSize();
+            delegate.setMaximumPoolSize(size);
+            gate.resize(previous, size);
+            maxPoolSizeLimit = size;
+        } finally {
+            resizeLock.unlock();
+        }
+    }
+
+    @Override
+    public final int getMaxPoolSizeLimit() {
+        return maxPoolSizeLimit > 0 ? maxPoolSizeLimit : delegate.getMaximumPoolSize();
+    }
+
+    @Override
+    public final void resize(final int maxPoolSize) {
+        resizeLock.lock();
+        try {
+            final int previous = delegate.getMaximumPoolSize();
+            if (maxPoolSizeLimit == 0) {
+                maxPoolSizeLimit = previous;
+            }
+            delegate.getHikariConfigMXBean().setMaximumPoolSize(maxPoolSize);
+            gate.resize(previous, maxPoolSize);
+            if (maxPoolSize > previous && getThreadsAwaitingConnection() > 0) {
+                // HikariCP only adds connections for waiting threads when a connection
+                // is requested, so request one to serve the threads already waiting.
+                RESIZE_EXECUTOR.execute(this::requestConnection);
+            }
+        } finally {
+            resizeLock.unlock();
+        }
+    }
+
+    private void requestConnection() {
+        try {
+            delegate.getConnection().close();
+        } catch (final SQLException e) {
+            // The waiting threads receive the same failure.
+        }
     }
 
     @Override
@@ -141,6 +690,29 @@ abstract class PostriseDataSource implements ConnectionProvider {
         delegate.setAutoCommit(isAutoCommit);
     }
 
+    @Override
+    public final boolean isRoleAffinity() {
+        return isRoleAffinity;
+    }
+
+    @Override
+    public final void setRoleAffinity(final boolean isRoleAffinity) {
+        this.isRoleAffinity = isRoleAffinity;
+        if (!isRoleAffinity) {
+            forgetRoles();
+        }
+    }
+
+    @Override
+    public final boolean isDeferredRole() {
+        return isDeferredRole;
+    }
+
+    @Override
+    public final void setDeferredRole(final boolean isDeferredRole) {
+        this.isDeferredRole = isDeferredRole;
+    }
+
     @Override
     public final long getValidationTimeout() {
         return delegate.getValidationTimeout();
@@ -208,8 +780,155 @@ abstract class PostriseDataSource implements ConnectionProvider {
         return method.applyAsInt(delegate.getHikariPoolMXBean());
     }
 
+    @Override
+    public final boolean isAdaptivePoolSize() {
+        return isAdaptivePoolSize;
+    }
+
+    @Override
+    public final void setAdaptivePoolSize(final boolean isAdaptivePoolSize) {
+        this.isAdaptivePoolSize = isAdaptivePoolSize;
+    }
+
+    @Override
+    public final boolean isFairCheckout() {
+        return isFairCheckout;
+    }
+
+    @Override
+    public final void setFairCheckout(final boolean isFairCheckout) {
+        this.isFairCheckout = isFairCheckout;
+    }
+
+    @Override
+    public final int getMaxTransactionRetries() {
+        return maxTransactionRetries;
+    }
+
+    @Override
+    public final void setMaxTransactionRetries(final int maxTransactionRetries) {
+        if (maxTransactionRetries < 0) {
+            throw new IllegalArgumentException("Illegal maxTransactionRetries " + maxTransactionRetries);
+        }
+        this.maxTransactionRetries = maxTransactionRetries;
+    }
+
+    @Override
+    public final long getTransactionRetryBackoff() {
+        return transactionRetryBackoffMs;
+    }
+
+    @Override
+    public final void setTransactionRetryBackoff(final long transactionRetryBackoffMs) {
+        if (transactionRetryBackoffMs < 0) {
+            throw new IllegalArgumentException("Illegal transactionRetryBackoffMs " + transactionRetryBackoffMs);
+        }
+        this.transactionRetryBackoffMs = transactionRetryBackoffMs;
+    }
+
+    @Override
+    public final int getFetchSize() {
+        return fetchSize;
+    }
+
+    @Override
+    public final void setFetchSize(final int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("Illegal fetchSize " + fetchSize);
+        }
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    public final int getWriteBehindBatchSize() {
+        return writeBehindBatchSize;
+    }
+
+    @Override
+    public final void setWriteBehindBatchSize(final int writeBehindBatchSize) {
+        if (writeBehindBatchSize < 1) {
+            throw new IllegalArgumentException("Illegal writeBehindBatchSize " + writeBehindBatchSize);
+        }
+        this.writeBehindBatchSize = writeBehindBatchSize;
+    }
+
+    @Override
+    public final long getWriteBehindFlushInterval() {
+        return writeBehindFlushIntervalMs;
+    }
+
+    @Override
+    public final void setWriteBehindFlushInterval(final long writeBehindFlushIntervalMs) {
+        if (writeBehindFlushIntervalMs < 0) {
+            throw new IllegalArgumentException("Illegal writeBehindFlushInterval " + writeBehindFlushIntervalMs);
+        }
+        this.writeBehindFlushIntervalMs = writeBehindFlushIntervalMs;
+    }
+
+    @Override
+    public final int getWriteBehindCapacity() {
+        return writeBehindCapacity;
+    }
+
+    @Override
+    public final void setWriteBehindCapacity(final int writeBehindCapacity) {
+        if (writeBehindCapacity < 1) {
+            throw new IllegalArgumentException("Illegal writeBehindCapacity " + writeBehindCapacity);
+        }
+        this.writeBehindCapacity = writeBehindCapacity;
+    }
+
+    @Override
+    public final Set<SessionReset> getSessionReset() {
+        return sessionReset == null ? Collections.emptySet() : sessionReset.getStages();
+    }
+
+    @Override
+    public final void setSessionReset(final SessionReset... stages) {
+        Guard.check("stages", stages);
+        final Set<SessionReset> reset = EnumSet.noneOf(SessionReset.class);
+        for (final SessionReset stage : stages) {
+            Guard.check("stage", stage);
+            reset.add(stage);
+        }
+        this.sessionReset = reset.isEmpty() ? null : new SessionResetPipeline(this, reset);
+        forgetRoles();
+    }
+
+    /**
+     * Called on the reset thread after the session of a pooled connection was
+     * reset and before it is returned to the pool.
+     *
+     * @param connection - the borrowed {@link Connection}.
+     * @param stages     - the reset stages that were executed.
+     * @throws SQLException if a database access error occurs.
+     */
+    void afterSessionReset(final Connection connection, final Set<SessionReset> stages) throws SQLException {
+    }
+
+    /**
+     * Remove a borrowed {@link Connection} from the pool. The physical connection
+     * is closed instead of being returned to the pool.
+     *
+     * @param connection - the borrowed {@link Connection}.
+     */
+    final void evict(final Connection connection) {
+        delegate.evictConnection(connection);
+    }
+
+    @Override
+    public final boolean isClosed() {
+        return delegate.isClosed();
+    }
+
     @Override
     public final void close() {
+        writeBehindLock.lock();
+        try {
+            writeBehind.values().forEach(WriteBehindQueue::close);
+        } finally {
+            writeBehindLock.unlock();
+        }
         delegate.close();
     }
 
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.adonix.postrise;
+
+/**
+ * Implementations of this interface receive timings and counts from a
+ * {@link Server} and its data sources, tagged by database and, where it applies,
+ * by {@code ROLE}. All durations are in nanoseconds.
+ * <p>
+ * Methods are called on the hot path of every connection request and must not
+ * block. All methods do nothing by default, so implementations only override the
+ * measurements they publish.
+ * 
+ * @see PostgresServer#getMetrics()
+ * @see InMemoryMetrics
+ */
+public interface PostriseMetrics {
+
+    /**
+     * Metrics are not recorded.
+     */
+    PostriseMetrics NONE = new PostriseMetrics() {
+    };
+
+    /**
+     * Time spent waiting for a connection from the pool.
+     * 
+     * @param databaseName - the name of the database.
+     * @param nanos        - the wait time.
+     */
+    default void recordBorrowWait(String databaseName, long nanos) {
+    }
+
+    /**
+     * Time between getting a connection from the data source and closing it.
+     * 
+     * @param databaseName - the name of the database.
+     * @param roleName     - the {@code ROLE} of the connection or {@code null}.
+     * @param nanos        - the hold time.
+     */
+    default void recordHoldTime(String databaseName, String roleName, long nanos) {
+    }
+
+    /**
+     * Time spent sending {@code SET ROLE} or {@code RESET ROLE} to the database.
+     * 
+     * @param databaseName - the name of the database.
+     * @param roleName     - the {@code ROLE} that was set or {@code null} for
+     *                     {@code RESET ROLE}.
+     * @param nanos        - the round trip time.
+     */
+    default void recordRoleSwitch(String databaseName, String roleName, long nanos) {
+    }
+
+    /**
+     * A transaction failed with a serialization failure or deadlock and will be
+     * run again after the backoff.
+     * 
+     * @param databaseName - the name of the database.
+     * @param roleName     - the {@code ROLE} of the transaction.
+     * @param nanos        - the backoff before the retry.
+     */
+    default void recordTransactionRetry(String databaseName, String roleName, long nanos) {
+    }
+
+    /**
+     * Time spent creating a data source, including the first connection.
+     * 
+     * @param databaseName - the name of the database.
+     * @param nanos        - the creation time.
+     */
+    default void recordCreate(String databaseName, long nanos) {
+    }
+
+    /**
+     * A data source could not be created.
+     * 
+     * @param databaseName - the name of the database.
+     */
+    default void recordCreateFailure(String databaseName) {
+    }
+
+    /**
+     * Time spent by a single listener handling an event.
+     * 
+     * @param databaseName - the name of the database.
+     * @param event        - the name of the event, for example
+     *                     {@code beforeCreate}.
+     * @param nanos        - the listener execution time.
+     */
+    default void recordListener(String databaseName, String event, long nanos) {
+    }
+}
@@ -18,14 +18,30 @@ package org.adonix.postrise;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedHashSet;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
@@ -68,26 +84,486 @@ abstract class PostriseServer implements DataSourceListener, Server {
 
     @Override
     public final Connection getConnection(final String databaseName) throws SQLException {
-        return getDataSource(databaseName).getConnection();
+        final DataSourceContext dataSource = getDataSource(databaseName);
+        try {
+            return dataSource.getConnection();
+        } catch (final SQLException e) {
+            if (!isEvicted(dataSource)) {
+                throw e;
+            }
+            return getDataSource(databaseName).getConnection();
+        }
     }
 
     @Override
     public final Connection getConnection(final String databaseName, final String roleName) throws SQLException {
-        return getDataSource(databaseName).getConnection(roleName);
+        final DataSourceContext dataSource = getDataSource(databaseName);
+        try {
+            return dataSource.getConnection(roleName);
+        } catch (final SQLException e) {
+            if (!isEvicted(dataSource)) {
+                throw e;
+            }
+            return getDataSource(databaseName).getConnection(roleName);
+        }
+    }
+
+    @Override
+    public final <T> T inTransaction(final String databaseName, final String roleName,
+            final TransactionCallback<T> work) throws SQLException {
+        return getDataSource(databaseName).inTransaction(roleName, work);
+    }
+
+    @Override
+    public final <T> T inTransaction(final String databaseName, final String roleName, final int isolation,
+            final TransactionCallback<T> work) throws SQLException {
+        return getDataSource(databaseName).inTransaction(roleName, isolation, work);
     }
 
     @Override
     public final DataSourceContext getDataSource(final String databaseName) {
+        // Fast path for an existing data source without locking or allocation.
+        if (databaseName != null && state == ServerState.OPEN) {
+            final ConnectionProvider provider = databasePools.get(databaseName);
+            if (provider != null) {
+                return provider;
+            }
+        }
+        Guard.check("databaseName", databaseName);
+        return join(getConnectionProvider(getKey(databaseName), Runnable::run));
+    }
+
+    @Override
+    public final CompletableFuture<DataSourceContext> getDataSourceAsync(final String databaseName) {
         Guard.check("databaseName", databaseName);
-        return getConnectionProvider(getKey(databaseName));
+        return getConnectionProvider(getKey(databaseName), createExecutor).thenApply(provider -> provider);
+    }
+
+    @Override
+    public final List<PrewarmResult> prewarm(final Collection<String> databaseNames, final int parallelism) {
+        Guard.check("databaseNames", databaseNames);
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Illegal parallelism " + parallelism);
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+                new DaemonThreadFactory("postrise-prewarm"));
+        try {
+            final List<CompletableFuture<PrewarmResult>> futures = new ArrayList<>();
+            for (final String databaseName : databaseNames) {
+                futures.add(CompletableFuture.supplyAsync(() -> prewarm(databaseName), executor));
+            }
+            final List<PrewarmResult> results = new ArrayList<>();
+            for (final CompletableFuture<PrewarmResult> future : futures) {
+                results.add(future.join());
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private PrewarmResult prewarm(final String databaseName) {
+        final long start = System.nanoTime();
+        Exception exception = null;
+        try {
+            fill(getDataSource(databaseName));
+        } catch (final Exception e) {
+            exception = e;
+        }
+        final PrewarmResult result = new PrewarmResult(databaseName, Duration.ofNanos(System.nanoTime() - start),
+                exception);
+        if (result.isSuccess()) {
+            LOGGER.info("{}: prewarm {}", this, result);
+        } else {
+            LOGGER.warn("{}: prewarm {}: {}", this, result, exception.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * Hold {@code minIdle} connections at the same time so the pool must open
+     * them, then return all of them to the pool as idle connections.
+     */
+    private static void fill(final DataSourceContext context) throws SQLException {
+        final List<Connection> connections = new ArrayList<>();
+        try {
+            while (connections.size() < context.getMinIdle()) {
+                connections.add(context.getConnection());
+            }
+        } finally {
+            for (final Connection connection : connections) {
+                connection.close();
+            }
+        }
+    }
+
+    // --------------------------------------------------------------------------
+    // CREATE - Single-flight creation of data sources outside of any map lock.
+    // --------------------------------------------------------------------------
+
+    /**
+     * Data sources currently being created. Callers requesting the same database
+     * share the pending creation.
+     */
+    private final ConcurrentMap<String, CompletableFuture<ConnectionProvider>> pendingPools = new ConcurrentHashMap<>();
+
+    /**
+     * The most recent creation failure for each database.
+     */
+    private final ConcurrentMap<String, CreateFailure> createFailures = new ConcurrentHashMap<>();
+
+    private final ExecutorService createExecutor = Executors
+            .newCachedThreadPool(new DaemonThreadFactory("postrise-create"));
+
+    /**
+     * A failed data source creation. The failure is returned to callers until the
+     * backoff has elapsed.
+     */
+    private static final class CreateFailure {
+        private final RuntimeException exception;
+        private final int failures;
+        private final long retryAt;
+
+        private CreateFailure(final RuntimeException exception, final int failures, final long backoffNanos) {
+            this.exception = exception;
+            this.failures = failures;
+            this.retryAt = System.nanoTime() + backoffNanos;
+        }
+
+        private boolean isBackoff() {
+            return System.nanoTime() - retryAt < 0;
+        }
+    }
+
+    /**
+     * Get the existing data source, join the pending creation, or start a new
+     * creation on the executor.
+     */
+    private CompletableFuture<ConnectionProvider> getConnectionProvider(final String databaseName,
+            final Executor executor) {
+
+        if (state == ServerState.DRAINING) {
+            return CompletableFuture.failedFuture(new IllegalStateException(this + " is draining"));
+        }
+
+        final ConnectionProvider provider = databasePools.get(databaseName);
+        if (provider != null) {
+            return CompletableFuture.completedFuture(provider);
+        }
+
+        final CreateFailure failure = createFailures.get(databaseName);
+        if (failure != null && failure.isBackoff()) {
+            return CompletableFuture.failedFuture(failure.exception);
+        }
+
+        final CompletableFuture<ConnectionProvider> created = new CompletableFuture<>();
+        final CompletableFuture<ConnectionProvider> pending = pendingPools.putIfAbsent(databaseName, created);
+        if (pending != null) {
+            return pending;
+        }
+
+        try {
+            executor.execute(() -> create(databaseName, created));
+        } catch (final RejectedExecutionException e) {
+            pendingPools.remove(databaseName, created);
+            created.completeExceptionally(new IllegalStateException(this + " is closed", e));
+        }
+        return created;
+    }
+
+    private void create(final String databaseName, final CompletableFuture<ConnectionProvider> created) {
+        try {
+            // Another creation may have completed before this one was registered.
+            ConnectionProvider provider = databasePools.get(databaseName);
+            if (provider == null) {
+                // Fail fast before the first connection if this server is closing.
+                isOpenThen(() -> databaseName);
+                provider = doCreate(databaseName);
+                try {
+                    publish(databaseName, provider);
+                } finally {
+                    releaseConnections(provider);
+                }
+            }
+            createFailures.remove(databaseName);
+            created.complete(provider);
+        } catch (final CreateDataSourceException e) {
+            getMetricsOrNone().recordCreateFailure(databaseName);
+            onCreateFailure(databaseName, e);
+            created.completeExceptionally(e);
+        } catch (final RuntimeException | Error e) {
+            created.completeExceptionally(e);
+        } finally {
+            pendingPools.remove(databaseName, created);
+        }
+    }
+
+    /**
+     * Add the new data source to this server. If the server began closing while
+     * the data source was created, the data source is closed.
+     */
+    private void publish(final String databaseName, final ConnectionProvider provider) {
+        try {
+            isOpenThen(() -> databasePools.put(databaseName, provider));
+        } catch (final IllegalStateException e) {
+            closeDataSource(provider);
+            throw e;
+        }
+        startMaintenance(databaseName, provider);
+    }
+
+    // --------------------------------------------------------------------------
+    // MAINTENANCE - Background tasks for the data sources of this server.
+    // --------------------------------------------------------------------------
+
+    private final Lock maintenanceLock = new ReentrantLock();
+    private ScheduledExecutorService maintenance;
+    private ConnectionBudget budget;
+    private boolean isResizing;
+    private final Map<String, AdaptivePoolSizer> sizers = new ConcurrentHashMap<>();
+
+    /**
+     * Start the enabled background tasks when the first data source is added, and
+     * apply the data source and connection limits after each new data source.
+     */
+    private void startMaintenance(final String databaseName, final ConnectionProvider provider) {
+        final boolean isEviction = !getDataSourceIdleTimeout().isZero() || getMaxDataSources() > 0;
+        final boolean isBudget = getMaxConnections() > 0;
+        final boolean isAdaptive = !isBudget && provider.isAdaptivePoolSize();
+        if (!isEviction && !isBudget && !isAdaptive) {
+            return;
+        }
+        maintenanceLock.lock();
+        try {
+            startMaintenance(databaseName, provider, isEviction, isBudget, isAdaptive);
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    private void startMaintenance(final String databaseName, final ConnectionProvider provider,
+            final boolean isEviction, final boolean isBudget, final boolean isAdaptive) {
+        if (maintenance == null) {
+            maintenance = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("postrise-maintenance"));
+            if (isEviction) {
+                schedule(this::evictDataSources, getEvictionInterval());
+            }
+        }
+        if (isAdaptive) {
+            sizers.put(databaseName, new AdaptivePoolSizer(provider));
+        }
+        if ((isBudget || isAdaptive) && !isResizing) {
+            isResizing = true;
+            schedule(this::resizePools, getRebalanceInterval());
+        }
+        if (getMaxDataSources() > 0 && databasePools.size() > getMaxDataSources()) {
+            maintenance.execute(() -> runCatch(this::evictDataSources));
+        }
+        if (isBudget) {
+            maintenance.execute(() -> runCatch(this::resizePools));
+        }
+    }
+
+    /**
+     * @return the connection budget of this server or {@code null} if the number
+     *         of connections is unlimited.
+     */
+    private ConnectionBudget getBudget() {
+        if (getMaxConnections() <= 0) {
+            return null;
+        }
+        maintenanceLock.lock();
+        try {
+            if (budget == null) {
+                budget = new ConnectionBudget(getMaxConnections());
+            }
+            return budget;
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    /**
+     * Limit a new data source to the connections left in the budget before its
+     * pool starts.
+     */
+    private void reserveConnections(final ConnectionProvider provider) {
+        final ConnectionBudget connections = getBudget();
+        if (connections != null) {
+            connections.reserve(provider, getOpenProviders());
+        }
+    }
+
+    private void releaseConnections(final ConnectionProvider provider) {
+        final ConnectionBudget connections = getBudget();
+        if (connections != null) {
+            connections.release(provider);
+        }
+    }
+
+    private List<ConnectionProvider> getOpenProviders() {
+        final List<ConnectionProvider> providers = new ArrayList<>();
+        for (final ConnectionProvider provider : databasePools.values()) {
+            if (!provider.isClosed()) {
+                providers.add(provider);
+            }
+        }
+        return providers;
+    }
+
+    private void schedule(final ActionThrows task, final Duration interval) {
+        final long nanos = interval.toNanos();
+        maintenance.scheduleWithFixedDelay(() -> runCatch(task), nanos, nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void stopMaintenance() {
+        maintenanceLock.lock();
+        try {
+            if (maintenance != null) {
+                maintenance.shutdownNow();
+            }
+            sizers.clear();
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    /**
+     * Lend the connections of the server budget to the data sources with demand,
+     * or resize the adaptive data sources when there is no budget.
+     */
+    private void resizePools() {
+        if (state != ServerState.OPEN) {
+            return;
+        }
+        final ConnectionBudget connections = getBudget();
+        if (connections != null) {
+            connections.rebalance(getOpenProviders());
+        }
+        sizers.values().removeIf(AdaptivePoolSizer::isClosed);
+        for (final AdaptivePoolSizer sizer : sizers.values()) {
+            runCatch(sizer::sample);
+        }
+    }
+
+    // --------------------------------------------------------------------------
+    // EVICT - Close cold data sources. They are created again on next use.
+    // --------------------------------------------------------------------------
+
+    /**
+     * Close data sources without active connections that exceeded the idle
+     * timeout, then close the least recently used data sources until the number
+     * of open data sources is within the limit.
+     */
+    private void evictDataSources() {
+        final long idleTimeout = getDataSourceIdleTimeout().toNanos();
+        final int maxDataSources = getMaxDataSources();
+
+        final List<Map.Entry<String, ConnectionProvider>> idle = new ArrayList<>();
+        for (final Map.Entry<String, ConnectionProvider> entry : databasePools.entrySet()) {
+            final ConnectionProvider provider = entry.getValue();
+            if (provider.getActiveConnections() == 0 && provider.getThreadsAwaitingConnection() == 0) {
+                idle.add(entry);
+            }
+        }
+        idle.sort(Comparator.comparingLong(entry -> entry.getValue().getLastUsed()));
+
+        int excess = maxDataSources > 0 ? databasePools.size() - maxDataSources : 0;
+        final long now = System.nanoTime();
+        for (final Map.Entry<String, ConnectionProvider> entry : idle) {
+            final boolean isExpired = idleTimeout > 0 && now - entry.getValue().getLastUsed() >= idleTimeout;
+            if ((isExpired || excess > 0) && evict(entry.getKey(), entry.getValue())) {
+                excess--;
+            }
+        }
+    }
+
+    private boolean evict(final String databaseName, final ConnectionProvider provider) {
+        try {
+            if (!isOpenThen(() -> databasePools.remove(databaseName, provider))) {
+                return false;
+            }
+        } catch (final IllegalStateException e) {
+            // This server is closing and will close the data source.
+            return false;
+        }
+        LOGGER.info("{}: evicting idle {}", this, provider);
+        closeDataSource(provider, drainDeadline(provider));
+        return true;
+    }
+
+    /**
+     * Create every data source again in the background, for example after the
+     * database host changed. Callers requesting a database before its
+     * replacement is ready wait for the pending creation. The replaced data
+     * sources are closed after their active connections are returned.
+     */
+    final void rebuildDataSources() {
+        final Map<ConnectionProvider, Long> replaced = new LinkedHashMap<>();
+        for (final Map.Entry<String, ConnectionProvider> entry : new ArrayList<>(databasePools.entrySet())) {
+            final String databaseName = entry.getKey();
+            final ConnectionProvider provider = entry.getValue();
+            try {
+                if (!isOpenThen(() -> databasePools.remove(databaseName, provider))) {
+                    continue;
+                }
+            } catch (final IllegalStateException e) {
+                // This server is closing and will close the data sources.
+                break;
+            }
+            LOGGER.info("{}: rebuilding {}", this, provider);
+            replaced.put(provider, drainDeadline(provider));
+            getConnectionProvider(databaseName, createExecutor);
+        }
+        replaced.forEach(this::closeDataSource);
+    }
+
+    /**
+     * @return an open data source of this server or {@code null} if there is
+     *         none.
+     */
+    final ConnectionProvider getAnyDataSource() {
+        for (final ConnectionProvider provider : databasePools.values()) {
+            if (!provider.isClosed()) {
+                return provider;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A data source closed while this server is open was evicted between the
+     * lookup and the connection request, and can be created again.
+     */
+    private boolean isEvicted(final DataSourceContext dataSource) {
+        return state == ServerState.OPEN && dataSource.isClosed();
     }
 
-    private ConnectionProvider getConnectionProvider(final String databaseName) {
-        return databasePools.computeIfAbsent(databaseName, this::create);
+    private void onCreateFailure(final String databaseName, final RuntimeException e) {
+        final long backoff = getCreateRetryBackoff().toNanos();
+        if (backoff <= 0) {
+            return;
+        }
+        final CreateFailure previous = createFailures.get(databaseName);
+        final int failures = previous == null ? 1 : previous.failures + 1;
+        final long delay = Math.min(backoff << Math.min(failures - 1, 30), getCreateRetryBackoffMax().toNanos());
+        createFailures.put(databaseName, new CreateFailure(e, failures, delay));
+        LOGGER.warn("{}: data source creation for \"{}\" failed {} time(s), retry in {} ms", this, databaseName,
+                failures, TimeUnit.NANOSECONDS.toMillis(delay));
     }
 
-    private ConnectionProvider create(final String databaseName) {
-        return isOpenThen(() -> doCreate(databaseName));
+    private static ConnectionProvider join(final CompletableFuture<ConnectionProvider> future) {
+        try {
+            return future.join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
     }
 
     /**
@@ -102,7 +578,9 @@ abstract class PostriseServer implements DataSourceListener, Server {
      */
     private ConnectionProvider doCreate(final String databaseName) {
 
+        final long start = System.nanoTime();
         final ConnectionProvider provider = createDataSource(databaseName);
+        provider.setMetrics(getMetricsOrNone());
 
         // Listeners can configure the data source in this event.
         try {
@@ -111,6 +589,7 @@ abstract class PostriseServer implements DataSourceListener, Server {
             throw new CreateDataSourceException(e);
         }
 
+        reserveConnections(provider);
         LOGGER.info("{}: creating data source: {}...", this, provider);
 
         // Create the first connection to validate settings, initialize the connection
@@ -121,9 +600,11 @@ abstract class PostriseServer implements DataSourceListener, Server {
 
             onAfterCreate(provider);
 
+            getMetricsOrNone().recordCreate(databaseName, System.nanoTime() - start);
             return provider;
 
         } catch (final Exception e) {
+            releaseConnections(provider);
             runCatch(provider::close);
             throw new CreateDataSourceException(e);
         }
@@ -133,14 +614,18 @@ abstract class PostriseServer implements DataSourceListener, Server {
     // LISTENERS - Manage listeners to receive data source events.
     // --------------------------------------------------------------------------
 
-    private final Set<DataSourceListener> dataSourceListeners = Collections.synchronizedSet(new LinkedHashSet<>());
+    /**
+     * Registration copies the list, so events iterate a snapshot in insertion
+     * order without locking and a slow listener never blocks other events.
+     */
+    private final CopyOnWriteArrayList<DataSourceListener> dataSourceListeners = new CopyOnWriteArrayList<>();
 
     private final Map<String, DatabaseListener> databaseListeners = new ConcurrentHashMap<>();
 
     @Override
     public final void addListener(final DataSourceListener listener) {
         Guard.check("listener", listener);
-        if (!isOpenThen(() -> dataSourceListeners.add(listener)).booleanValue()) {
+        if (!isOpenThen(() -> dataSourceListeners.addIfAbsent(listener)).booleanValue()) {
             LOGGER.error("{}: Data source listener \"{}\" already exists", this, listener);
         }
     }
@@ -158,27 +643,36 @@ abstract class PostriseServer implements DataSourceListener, Server {
     // --------------------------------------------------------------------------
 
     /**
-     * A {@link Server} should be in one of three states.
+     * A {@link Server} should be in one of four states.
      */
     private enum ServerState {
-        OPEN, CLOSING, CLOSED
+        OPEN, DRAINING, CLOSING, CLOSED
     }
 
     /**
-     * Initialize the {@link Server} state to {@link ServerState#OPEN}
+     * Initialize the {@link Server} state to {@link ServerState#OPEN}. Changes
+     * are made while holding the write lock. The state is volatile so the fast
+     * path in {@link #getDataSource(String)} can read it without the read lock.
      */
-    private ServerState state = ServerState.OPEN;
+    private volatile ServerState state = ServerState.OPEN;
 
     private final ReadWriteLock stateLock = new ReentrantReadWriteLock();
     private final Lock readState = stateLock.readLock();
     private final Lock writeState = stateLock.writeLock();
 
     private <T> T isOpenThen(final Supplier<T> action) {
+        // The state never returns to OPEN, so fail fast without waiting for the
+        // write lock held by close().
+        if (state != ServerState.OPEN) {
+            throw new IllegalStateException(this + " is " + state.name().toLowerCase());
+        }
         readState.lock();
         try {
             switch (state) {
                 case OPEN:
                     return action.get();
+                case DRAINING:
+                    throw new IllegalStateException(this + " is draining");
                 case CLOSING:
                     throw new IllegalStateException(this + " is closing");
                 case CLOSED:
@@ -229,6 +723,24 @@ abstract class PostriseServer implements DataSourceListener, Server {
         }
     }
 
+    /**
+     * Servers owned by this server, such as the servers for read replicas. Their
+     * connections are included in the connection counts of this server, and they
+     * are closed with this server after its own data sources.
+     *
+     * @return the servers owned by this server.
+     */
+    Collection<? extends PostriseServer> getChildServers() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @throws IllegalStateException if this server is not open.
+     */
+    final void checkOpen() {
+        isOpenThen(() -> this);
+    }
+
     private static final String getKey(final String database) {
         return database.trim();
     }
@@ -251,6 +763,9 @@ abstract class PostriseServer implements DataSourceListener, Server {
         for (final DataSourceContext context : databasePools.values()) {
             total += function.applyAsInt(context);
         }
+        for (final PostriseServer child : getChildServers()) {
+            total += child.getStatus(function);
+        }
         return total;
     }
 
@@ -278,16 +793,58 @@ abstract class PostriseServer implements DataSourceListener, Server {
     // SEND EVENTS - Send data source events to listeners including "this".
     // --------------------------------------------------------------------------
 
-    private void doEvent(final DataSourceContext context, final Consumer<DataSourceListener> event) {
-        // The set requires manual synchronization on iteration.
-        synchronized (dataSourceListeners) {
-            for (final DataSourceListener listener : dataSourceListeners) {
-                runCatch(() -> event.accept(listener));
-            }
+    /**
+     * Runs the {@code afterCreate} and {@code afterClose} events in order when
+     * {@link #isAsyncEvents()} is enabled.
+     */
+    private final ExecutorService eventExecutor = Executors
+            .newSingleThreadExecutor(new DaemonThreadFactory("postrise-events"));
+
+    private void doEvent(final DataSourceContext context, final String name,
+            final Consumer<DataSourceListener> event) {
+        for (final DataSourceListener listener : dataSourceListeners) {
+            runCatch(() -> timeEvent(context.getDatabaseName(), name, () -> event.accept(listener)));
         }
         final DatabaseListener listener = databaseListeners.get(context.getDatabaseName());
         if (listener != null) {
-            runCatch(() -> event.accept(listener));
+            runCatch(() -> timeEvent(context.getDatabaseName(), name, () -> event.accept(listener)));
+        }
+    }
+
+    /**
+     * Send an event that does not affect the data source to the listeners
+     * registered now, on the event thread if enabled. Exceptions are never
+     * returned to the caller.
+     */
+    private void doAfterEvent(final DataSourceContext context, final String name,
+            final Consumer<DataSourceListener> event) {
+        if (!isAsyncEvents()) {
+            doEvent(context, name, event);
+            return;
+        }
+        final List<DataSourceListener> listeners = new ArrayList<>(dataSourceListeners);
+        final DatabaseListener databaseListener = databaseListeners.get(context.getDatabaseName());
+        if (databaseListener != null) {
+            listeners.add(databaseListener);
+        }
+        final Runnable dispatch = () -> {
+            for (final DataSourceListener listener : listeners) {
+                runCatch(() -> timeEvent(context.getDatabaseName(), name, () -> event.accept(listener)));
+            }
+        };
+        try {
+            eventExecutor.execute(dispatch);
+        } catch (final RejectedExecutionException e) {
+            dispatch.run();
+        }
+    }
+
+    private void timeEvent(final String databaseName, final String name, final Runnable event) {
+        final long start = System.nanoTime();
+        try {
+            event.run();
+        } finally {
+            getMetricsOrNone().recordListener(databaseName, name, System.nanoTime() - start);
         }
     }
 
@@ -297,34 +854,77 @@ abstract class PostriseServer implements DataSourceListener, Server {
      * 
      * @param settings
      */
-    private void onBeforeCreate(final DataSourceSettings settings) {
-        // The set requires manual synchronization on iteration.
-        synchronized (dataSourceListeners) {
-            for (final DataSourceListener listener : dataSourceListeners) {
-                listener.beforeCreate(settings);
-            }
+    final void onBeforeCreate(final DataSourceSettings settings) {
+        for (final DataSourceListener listener : dataSourceListeners) {
+            timeEvent(settings.getDatabaseName(), "beforeCreate", () -> listener.beforeCreate(settings));
         }
         final DatabaseListener listener = databaseListeners.get(settings.getDatabaseName());
         if (listener != null) {
-            listener.beforeCreate(settings);
+            timeEvent(settings.getDatabaseName(), "beforeCreate", () -> listener.beforeCreate(settings));
         }
     }
 
-    private void onAfterCreate(final DataSourceContext context) {
+    final void onAfterCreate(final DataSourceContext context) {
         LOGGER.info("{}: data source created: {}", this, context);
-        doEvent(context, listener -> listener.afterCreate(context));
+        doAfterEvent(context, "afterCreate", listener -> listener.afterCreate(context));
     }
 
-    private void onBeforeClose(final DataSourceContext context) {
+    final void onBeforeClose(final DataSourceContext context) {
         LOGGER.info("{}: {} closing...", this, context);
-        doEvent(context, listener -> listener.beforeClose(context));
+        doEvent(context, "beforeClose", listener -> listener.beforeClose(context));
     }
 
-    private void onAfterClose(final DataSourceContext context) {
-        doEvent(context, listener -> listener.afterClose(context));
+    final void onAfterClose(final DataSourceContext context) {
+        doAfterEvent(context, "afterClose", listener -> listener.afterClose(context));
         LOGGER.info("{}: {} closed", this, context);
     }
 
+    private void closeDataSource(final ConnectionProvider provider) {
+        onBeforeClose(provider);
+        runCatch(provider::close);
+        onAfterClose(provider);
+    }
+
+    /**
+     * Close the data source after its active connections are returned or the
+     * deadline has passed. Connections still active at the deadline are aborted
+     * by the close.
+     */
+    private void closeDataSource(final ConnectionProvider provider, final long deadline) {
+        onBeforeClose(provider);
+        runCatch(() -> awaitIdle(provider, deadline));
+        runCatch(provider::close);
+        onAfterClose(provider);
+    }
+
+    /**
+     * The deadline for the active connections of a data source removed from this
+     * server while it is open. A caller may still borrow from the data source
+     * after its removal, so its connections are drained for
+     * {@link #getCloseTimeout()}, or for the connection timeout of the data
+     * source if no close timeout is set.
+     */
+    private long drainDeadline(final ConnectionProvider provider) {
+        final Duration timeout = getCloseTimeout();
+        final long nanos = timeout.isZero() ? TimeUnit.MILLISECONDS.toNanos(provider.getConnectionTimeout())
+                : timeout.toNanos();
+        return System.nanoTime() + nanos;
+    }
+
+    private void awaitIdle(final ConnectionProvider provider, final long deadline) throws InterruptedException {
+        if (provider.isClosed()) {
+            return;
+        }
+        while (provider.getActiveConnections() > 0 && System.nanoTime() - deadline < 0) {
+            Thread.sleep(IDLE_POLL_MILLIS);
+        }
+        final int active = provider.getActiveConnections();
+        if (active > 0) {
+            LOGGER.warn("{}: {} has {} active connection(s) at the close timeout", this, provider, active);
+            onCloseTimeout(provider);
+        }
+    }
+
     // --------------------------------------------------------------------------
     // SERVER EVENTS - Override these methods in server subclasses.
     // --------------------------------------------------------------------------
@@ -347,6 +947,160 @@ abstract class PostriseServer implements DataSourceListener, Server {
     protected void afterClose() {
     }
 
+    /**
+     * The initial time a failed data source creation is returned to callers before
+     * creation is attempted again. The backoff doubles with each consecutive
+     * failure up to {@link #getCreateRetryBackoffMax()}. Default:
+     * {@link Duration#ZERO} (every request attempts creation)
+     *
+     * @return the initial backoff after a failed data source creation.
+     */
+    protected Duration getCreateRetryBackoff() {
+        return Duration.ZERO;
+    }
+
+    /**
+     * The maximum backoff after consecutive failed data source creations.
+     * Default: 1 minute
+     *
+     * @return the maximum backoff after a failed data source creation.
+     */
+    protected Duration getCreateRetryBackoffMax() {
+        return Duration.ofMinutes(1);
+    }
+
+    /**
+     * The time a data source without active connections remains open after its
+     * most recent connection request. Evicted data sources are closed and created
+     * again on next use. Default: {@link Duration#ZERO} (never evicted)
+     *
+     * @return the idle time before a data source is evicted.
+     */
+    protected Duration getDataSourceIdleTimeout() {
+        return Duration.ZERO;
+    }
+
+    /**
+     * The maximum number of open data sources. When the limit is exceeded, the
+     * least recently used data sources without active connections are evicted.
+     * Default: 0 (unlimited)
+     *
+     * @return the maximum number of open data sources.
+     */
+    protected int getMaxDataSources() {
+        return 0;
+    }
+
+    /**
+     * The interval between checks for data sources to evict. Only used if
+     * {@link #getDataSourceIdleTimeout()} or {@link #getMaxDataSources()} is
+     * set. Default: 30 seconds
+     *
+     * @return the interval between eviction checks.
+     */
+    protected Duration getEvictionInterval() {
+        return Duration.ofSeconds(30);
+    }
+
+    /**
+     * The maximum number of connections for all data sources of this server,
+     * usually set below the PostgreSQL {@code max_connections} minus reserved
+     * connections. Connections are lent to the data sources with demand. Each
+     * data source keeps at least {@link ConnectionPoolSettings#getMinIdle()
+     * getMinIdle()} and at most its configured
+     * {@link ConnectionPoolSettings#getMaxPoolSize() getMaxPoolSize()}.
+     * Default: 0 (unlimited)
+     *
+     * @return the maximum number of connections for all data sources.
+     */
+    protected int getMaxConnections() {
+        return 0;
+    }
+
+    /**
+     * The interval between redistributions of the connection budget, or between
+     * samples of data sources with
+     * {@link ConnectionPoolSettings#isAdaptivePoolSize() adaptive pool size}.
+     * Default: 1 second
+     *
+     * @return the interval between pool resizing.
+     */
+    protected Duration getRebalanceInterval() {
+        return Duration.ofSeconds(1);
+    }
+
+    /**
+     * The {@link PostriseMetrics} that receive measurements from this server and
+     * its data sources. Called once when the first data source is created.
+     * Default: {@link PostriseMetrics#NONE}
+     *
+     * @return the {@link PostriseMetrics} for this server.
+     * @see InMemoryMetrics
+     */
+    protected PostriseMetrics getMetrics() {
+        return PostriseMetrics.NONE;
+    }
+
+    private volatile PostriseMetrics metrics;
+
+    final PostriseMetrics getMetricsOrNone() {
+        if (metrics == null) {
+            final PostriseMetrics configured = getMetrics();
+            metrics = configured == null ? PostriseMetrics.NONE : configured;
+        }
+        return metrics;
+    }
+
+    /**
+     * Dispatch the {@code afterCreate} and {@code afterClose} events on a
+     * dedicated event thread, so slow listeners do not delay data source
+     * creation, eviction or close. Events are delivered in order to the listeners
+     * registered when the event occurred. Exceptions thrown by these events are
+     * already ignored. The {@code beforeCreate} and {@code beforeClose} events
+     * are always dispatched on the calling thread. Default: false
+     *
+     * @return {@code true} to dispatch the after events asynchronously.
+     */
+    protected boolean isAsyncEvents() {
+        return false;
+    }
+
+    /**
+     * The maximum number of data sources closed at the same time when this server
+     * closes. Default: 1 (data sources are closed one at a time)
+     *
+     * @return the number of data sources closed in parallel.
+     */
+    protected int getCloseParallelism() {
+        return 1;
+    }
+
+    /**
+     * The maximum time to wait for active connections to be returned when this
+     * server closes. The deadline is shared by all data sources. Connections
+     * still active at the deadline are aborted, and
+     * {@link #onCloseTimeout(DataSourceContext)} is dispatched for their data
+     * source. Default: {@link Duration#ZERO} (active connections are aborted
+     * immediately)
+     *
+     * @return the maximum time to wait for active connections on close.
+     */
+    protected Duration getCloseTimeout() {
+        return Duration.ZERO;
+    }
+
+    /**
+     * Event will be dispatched for each data source with active connections at
+     * the close timeout, before the connections are aborted. It is also
+     * dispatched for an evicted data source that still had active connections
+     * at its drain deadline.
+     *
+     * @param context - the data source that did not drain in time.
+     * @see #getCloseTimeout()
+     */
+    protected void onCloseTimeout(final DataSourceContext context) {
+    }
+
     /**
      * Event will be dispatched when an exception occurs that should not be thrown.
      *
@@ -359,11 +1113,74 @@ abstract class PostriseServer implements DataSourceListener, Server {
     // CLOSE - Clean shutdown of the server and all data sources.
     // --------------------------------------------------------------------------
 
+    private static final long IDLE_POLL_MILLIS = 10;
+
+    /**
+     * Close the data sources with up to {@link #getCloseParallelism()} threads.
+     * All data sources share the deadline of {@link #getCloseTimeout()}.
+     */
+    private void closeDataSources(final List<ConnectionProvider> providers) {
+        final Duration timeout = getCloseTimeout();
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        final Consumer<ConnectionProvider> close = timeout.isZero() ? this::closeDataSource
+                : provider -> closeDataSource(provider, deadline);
+        final int parallelism = Math.min(getCloseParallelism(), providers.size());
+        if (parallelism <= 1) {
+            providers.forEach(close);
+            return;
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+                new DaemonThreadFactory("postrise-close"));
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (final ConnectionProvider provider : providers) {
+                futures.add(executor.submit(() -> close.accept(provider)));
+            }
+            for (final Future<?> future : futures) {
+                runCatch(future::get);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @Override
-    public final void close() {
+    public final boolean drain(final Duration timeout) {
+        Guard.check("timeout", timeout);
         writeState.lock();
         try {
             if (state != ServerState.OPEN) {
+                LOGGER.warn("{}: drain request ignored", this);
+                return false;
+            }
+            state = ServerState.DRAINING;
+        } finally {
+            writeState.unlock();
+        }
+        LOGGER.info("{}: server draining...", this);
+
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        boolean isIdle = getActiveConnections() == 0;
+        try {
+            while (!isIdle && System.nanoTime() - deadline < 0) {
+                Thread.sleep(IDLE_POLL_MILLIS);
+                isIdle = getActiveConnections() == 0;
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!isIdle) {
+            LOGGER.warn("{}: {} active connection(s) at the drain timeout", this, getActiveConnections());
+        }
+        close();
+        return isIdle;
+    }
+
+    @Override
+    public final void close() {
+        writeState.lock();
+        try {
+            if (state != ServerState.OPEN && state != ServerState.DRAINING) {
                 LOGGER.warn("{}: extra close request ignored", this);
                 return;
             }
@@ -373,12 +1190,16 @@ abstract class PostriseServer implements DataSourceListener, Server {
             state = ServerState.CLOSING;
             LOGGER.info("{}: server closing...", this);
 
-            for (final ConnectionProvider provider : databasePools.values()) {
-                onBeforeClose(provider);
-                runCatch(provider::close);
-                onAfterClose(provider);
+            closeDataSources(new ArrayList<>(databasePools.values()));
+
+            for (final PostriseServer child : getChildServers()) {
+                runCatch(child::close);
             }
 
+            createExecutor.shutdown();
+            eventExecutor.shutdown();
+            stopMaintenance();
+
             runCatch(dataSourceListeners::clear);
             runCatch(databaseListeners::clear);
             runCatch(databasePools::clear);
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.adonix.postrise;
+
+import java.time.Duration;
+
+/**
+ * The outcome of pre-warming the data source for a single database.
+ *
+ * @see Server#prewarm(java.util.Collection, int)
+ */
+public final class PrewarmResult {
+
+    private final String databaseName;
+    private final Duration duration;
+    private final Exception exception;
+
+    /**
+     * The package-private constructor. Instances are created by a {@link Server}.
+     *
+     * @param databaseName - the name of the database.
+     * @param duration     - the time spent creating and filling the data source.
+     * @param exception    - the failure or {@code null} on success.
+     */
+    PrewarmResult(final String databaseName, final Duration duration, final Exception exception) {
+        this.databaseName = databaseName;
+        this.duration = duration;
+        this.exception = exception;
+    }
+
+    /**
+     * @return the name of the database.
+     */
+    public String getDatabaseName() {
+        return databaseName;
+    }
+
+    /**
+     * @return the time spent creating and filling the data source.
+     */
+    public Duration getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return {@code true} if the data source is ready for use.
+     */
+    public boolean isSuccess() {
+        return exception == null;
+    }
+
+    /**
+     * @return the exception that prevented pre-warming or {@code null} on success.
+     */
+    public Exception getException() {
+        return exception;
+    }
+
+    @Override
+    public String toString() {
+        return databaseName + (isSuccess() ? " ready" : " failed") + " in " + duration.toMillis() + " ms";
+    }
+}
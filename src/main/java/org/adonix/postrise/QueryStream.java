@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.adonix.postrise;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Pulls the rows of a query from a server-side cursor as a {@link Stream} is
+ * consumed. The driver only uses a cursor for a forward-only statement with a
+ * fetch size inside a transaction, so at most one fetch of rows is held in
+ * memory.
+ * <p>
+ * The transaction is rolled back and the connection is returned to the pool as
+ * soon as the last row is read, a row fails, or the stream is closed.
+ */
+final class QueryStream<T> extends Spliterators.AbstractSpliterator<T> {
+
+    /**
+     * Execute the query and stream its rows. The connection is returned to the
+     * pool if the query fails.
+     *
+     * @param connection - the leased {@link Connection} with an open read-only
+     *                   transaction.
+     * @param sql        - the query.
+     * @param fetchSize  - the number of rows fetched from the cursor at a time.
+     * @param mapper     - maps each row.
+     * @param parameters - the query parameters.
+     * @return a sequential {@link Stream} of the mapped rows.
+     * @throws SQLException if a database access error occurs.
+     */
+    static <T> Stream<T> open(final Connection connection, final String sql, final int fetchSize,
+            final RowMapper<T> mapper, final Object... parameters) throws SQLException {
+        final QueryStream<T> rows = new QueryStream<>(connection, mapper);
+        try {
+            rows.statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            rows.statement.setFetchSize(fetchSize);
+            for (int i = 0; i < parameters.length; i++) {
+                rows.statement.setObject(i + 1, parameters[i]);
+            }
+            rows.rs = rows.statement.executeQuery();
+        } catch (final SQLException | RuntimeException e) {
+            rows.close(e);
+            throw e;
+        }
+        return StreamSupport.stream(rows, false).onClose(rows::close);
+    }
+
+    private final Connection connection;
+    private final RowMapper<T> mapper;
+    private PreparedStatement statement;
+    private ResultSet rs;
+    private boolean isClosed;
+
+    private QueryStream(final Connection connection, final RowMapper<T> mapper) {
+        // The mapper may return null, for example for a NULL column.
+        super(Long.MAX_VALUE, Spliterator.ORDERED);
+        this.connection = connection;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super T> action) {
+        if (isClosed) {
+            return false;
+        }
+        final T row;
+        try {
+            if (!rs.next()) {
+                close();
+                return false;
+            }
+            row = mapper.map(rs);
+        } catch (final SQLException e) {
+            close(e);
+            throw new UncheckedSQLException(e);
+        } catch (final RuntimeException e) {
+            close(e);
+            throw e;
+        }
+        action.accept(row);
+        return true;
+    }
+
+    private void close() {
+        try {
+            release();
+        } catch (final SQLException e) {
+            throw new UncheckedSQLException(e);
+        }
+    }
+
+    private void close(final Exception cause) {
+        try {
+            release();
+        } catch (final SQLException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Release the cursor, end the read-only transaction and return the
+     * connection.
+     */
+    private void release() throws SQLException {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        try (connection) {
+            try {
+                if (statement != null) {
+                    statement.close();
+                }
+            } finally {
+                connection.rollback();
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.adonix.postrise;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * A read-only {@link Connection} from a primary data source. The driver only
+ * enforces {@link Connection#setReadOnly(boolean)} for explicit transactions on
+ * the primary, so in auto-commit mode the session is made read-only for the
+ * lease, and is made read-write again before the connection is returned to the
+ * pool.
+ *
+ * @see PostgresReplicaServer#getReadConnection(String)
+ */
+final class ReadOnlyConnection implements InvocationHandler {
+
+    private static final String SQL_READ_ONLY = "SET SESSION CHARACTERISTICS AS TRANSACTION READ ONLY";
+
+    private static final String SQL_READ_WRITE = "SET SESSION CHARACTERISTICS AS TRANSACTION READ WRITE";
+
+    /**
+     * Make the leased {@link Connection} read-only. The {@link Connection} is
+     * closed if it cannot be made read-only.
+     *
+     * @param connection - the leased {@link Connection}.
+     * @return the read-only {@link Connection}.
+     * @throws SQLException if a database access error occurs.
+     */
+    static Connection wrap(final Connection connection) throws SQLException {
+        try {
+            connection.setReadOnly(true);
+            final boolean isSessionReadOnly = connection.getAutoCommit();
+            if (isSessionReadOnly) {
+                execute(connection, SQL_READ_ONLY);
+            }
+            return (Connection) Proxy.newProxyInstance(ReadOnlyConnection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, new ReadOnlyConnection(connection, isSessionReadOnly));
+        } catch (final SQLException | RuntimeException e) {
+            try {
+                connection.close();
+            } catch (final SQLException close) {
+                e.addSuppressed(close);
+            }
+            throw e;
+        }
+    }
+
+    private final Connection delegate;
+    private final boolean isSessionReadOnly;
+    private boolean isClosed;
+
+    private ReadOnlyConnection(final Connection delegate, final boolean isSessionReadOnly) {
+        this.delegate = delegate;
+        this.isSessionReadOnly = isSessionReadOnly;
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return delegate.toString();
+            case "close":
+                return close();
+            default:
+                break;
+        }
+        try {
+            return method.invoke(delegate, args);
+        } catch (final InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Make the session read-write again outside of any transaction, so the
+     * setting is never rolled back, then return the connection to the pool.
+     * Work not committed by the caller is rolled back as the pool would.
+     */
+    private Object close() throws SQLException {
+        if (isClosed) {
+            return null;
+        }
+        isClosed = true;
+        try {
+            if (isSessionReadOnly && !delegate.isClosed()) {
+                if (!delegate.getAutoCommit()) {
+                    delegate.rollback();
+                    delegate.setAutoCommit(true);
+                }
+                execute(delegate, SQL_READ_WRITE);
+            }
+        } finally {
+            delegate.close();
+        }
+        return null;
+    }
+
+    private static void execute(final Connection connection, final String sql) throws SQLException {
+        try (final Statement stmt = connection.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+}
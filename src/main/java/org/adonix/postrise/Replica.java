@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.adonix.postrise;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The data sources of a single read replica. Data source events, metrics and
+ * exceptions are forwarded to the primary {@link Server}, so the replica data
+ * sources are configured by the same listeners as the primary data sources.
+ */
+final class Replica extends PostgresServer {
+
+    private static final Logger LOGGER = LogManager.getLogger(Replica.class);
+
+    /**
+     * The replication lag in milliseconds. Zero when the server is not in
+     * recovery, or is streaming from the primary and has replayed everything it
+     * received. Otherwise the age of the last replayed transaction, so a replica
+     * disconnected from the primary falls behind as time passes. {@code NULL}
+     * when the replica has not replayed a transaction yet.
+     * <p>
+     * The status of the WAL receiver is only visible with the privileges of
+     * {@code pg_read_all_stats}, so a running WAL receiver with a hidden status
+     * is taken as streaming.
+     */
+    private static final String REPLICATION_LAG_SQL = "SELECT CASE"
+            + " WHEN NOT pg_is_in_recovery() THEN 0"
+            + " WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() AND EXISTS (SELECT 1"
+            + " FROM pg_stat_wal_receiver WHERE COALESCE(status, 'streaming') = 'streaming') THEN 0"
+            + " ELSE (EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000)::bigint END";
+
+    static final long UNKNOWN_LAG = Long.MAX_VALUE;
+
+    /**
+     * Measures the lag of all replicas on a single daemon thread.
+     */
+    private static final class Scheduler {
+        private static final ScheduledExecutorService INSTANCE = Executors
+                .newSingleThreadScheduledExecutor(new DaemonThreadFactory("postrise-replica-probe"));
+    }
+
+    private final PostgresReplicaServer primary;
+    private final PostgresHost host;
+    private final ScheduledFuture<?> probeTask;
+    private volatile long lagMillis = UNKNOWN_LAG;
+    private volatile long retryAt;
+
+    /**
+     * @param primary - the server receiving the events of this replica.
+     * @param host    - the host of the read replica.
+     */
+    Replica(final PostgresReplicaServer primary, final PostgresHost host) {
+        this.primary = primary;
+        this.host = host;
+        final long interval = primary.getReplicaProbeInterval().toNanos();
+        this.probeTask = Scheduler.INSTANCE.scheduleWithFixedDelay(() -> runCatch(this::probe),
+                interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String getHostName() {
+        return host.getHostName();
+    }
+
+    @Override
+    public Integer getPort() {
+        return host.getPort();
+    }
+
+    /**
+     * @return the most recently measured replication lag in milliseconds, or
+     *         {@link #UNKNOWN_LAG}.
+     */
+    long getLagMillis() {
+        return lagMillis;
+    }
+
+    /**
+     * Get the data source for the database if this replica is reachable and
+     * within the lag limit.
+     *
+     * @param databaseName - the name of the database.
+     * @param maxLagMillis - the maximum replication lag in milliseconds.
+     * @return the data source or {@code null} if this replica should not be
+     *         used.
+     */
+    DataSourceContext getReadDataSource(final String databaseName, final long maxLagMillis) {
+        if (System.nanoTime() - retryAt < 0) {
+            return null;
+        }
+        final DataSourceContext dataSource;
+        try {
+            dataSource = getDataSource(databaseName);
+            if (lagMillis == UNKNOWN_LAG) {
+                probe(dataSource);
+            }
+        } catch (final RuntimeException | SQLException e) {
+            markDown(e);
+            return null;
+        }
+        return lagMillis <= maxLagMillis ? dataSource : null;
+    }
+
+    /**
+     * Measure the replication lag with any open data source of this replica.
+     */
+    void probe() {
+        final Iterator<String> databaseNames = getDatabaseNames().iterator();
+        if (!databaseNames.hasNext()) {
+            return;
+        }
+        try {
+            probe(getDataSource(databaseNames.next()));
+        } catch (final RuntimeException | SQLException e) {
+            markDown(e);
+        }
+    }
+
+    private void probe(final DataSourceContext dataSource) throws SQLException {
+        try (final Connection connection = dataSource.getConnection();
+                final Statement stmt = connection.createStatement();
+                final ResultSet rs = stmt.executeQuery(REPLICATION_LAG_SQL)) {
+            rs.next();
+            final long lag = rs.getLong(1);
+            lagMillis = rs.wasNull() ? UNKNOWN_LAG : lag;
+        }
+    }
+
+    /**
+     * Skip this replica until the next probe interval.
+     */
+    private void markDown(final Exception e) {
+        lagMillis = UNKNOWN_LAG;
+        retryAt = System.nanoTime() + primary.getReplicaProbeInterval().toNanos();
+        LOGGER.warn("{}: read replica {} is unavailable: {}", primary, host, e.getMessage());
+    }
+
+    @Override
+    protected PostgresDataSource createDataSource(final String databaseName) {
+        final PostgresDataSource dataSource = super.createDataSource(databaseName);
+        // Have the driver enforce read-only in auto-commit mode as well, so a
+        // write on the read path fails with the same error on every replica.
+        dataSource.addDataSourceProperty("readOnlyMode", "always");
+        return dataSource;
+    }
+
+    @Override
+    public void beforeCreate(final DataSourceSettings settings) {
+        primary.onBeforeCreate(settings);
+    }
+
+    @Override
+    public void afterCreate(final DataSourceContext context) {
+        primary.onAfterCreate(context);
+    }
+
+    @Override
+    public void beforeClose(final DataSourceContext context) {
+        primary.onBeforeClose(context);
+    }
+
+    @Override
+    public void afterClose(final DataSourceContext context) {
+        primary.onAfterClose(context);
+    }
+
+    @Override
+    protected void afterClose() {
+        probeTask.cancel(false);
+    }
+
+    @Override
+    protected PostriseMetrics getMetrics() {
+        return primary.getMetricsOrNone();
+    }
+
+    @Override
+    protected void onException(final Exception e) {
+        primary.onException(e);
+    }
+
+    @Override
+    public String toString() {
+        // Called by the server constructor before the fields are assigned.
+        return primary == null ? super.toString() : primary + "[" + host + "]";
+    }
+}
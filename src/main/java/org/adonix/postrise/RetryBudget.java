@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.adonix.postrise;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits transaction retries to a fraction of the transactions of a data
+ * source. Each transaction deposits {@link #RETRY_RATIO} of a token and each
+ * retry withdraws a whole token. Under a contention spike the balance runs out,
+ * so retries cannot multiply the load on the database.
+ * <p>
+ * The balance starts full at {@link #MAX_TOKENS}, so a quiet data source can
+ * still retry a burst of failures.
+ */
+final class RetryBudget {
+
+    /**
+     * The fraction of transactions that may be retried once the reserve is
+     * spent.
+     */
+    static final double RETRY_RATIO = 0.1;
+
+    /**
+     * The maximum number of retries that can be saved up.
+     */
+    static final int MAX_TOKENS = 10;
+
+    /**
+     * Tokens are counted in thousandths to avoid floating point updates.
+     */
+    private static final long SCALE = 1000;
+
+    private static final long DEPOSIT = (long) (RETRY_RATIO * SCALE);
+
+    private static final long CAPACITY = MAX_TOKENS * SCALE;
+
+    private final AtomicLong balance = new AtomicLong(CAPACITY);
+
+    /**
+     * Earn part of a retry for a transaction.
+     */
+    void deposit() {
+        long current;
+        do {
+            current = balance.get();
+            if (current >= CAPACITY) {
+                return;
+            }
+        } while (!balance.compareAndSet(current, Math.min(CAPACITY, current + DEPOSIT)));
+    }
+
+    /**
+     * Spend a retry if the budget allows it.
+     *
+     * @return {@code true} if the retry may proceed.
+     */
+    boolean withdraw() {
+        long current;
+        do {
+            current = balance.get();
+            if (current < SCALE) {
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - SCALE));
+        return true;
+    }
+}
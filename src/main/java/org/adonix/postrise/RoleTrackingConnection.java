@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.adonix.postrise;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link Connection} wrapper for a lease with {@code ROLE} affinity. It
+ * records whether the caller may have changed the {@code ROLE} during the
+ * lease, so the next checkout can skip {@code SET ROLE} or {@code RESET ROLE}
+ * when the connection is still known to be in the requested {@code ROLE}.
+ * <p>
+ * The {@code ROLE} is assumed to have changed if any SQL passed to the
+ * connection or its statements mentions {@code ROLE} or {@code AUTHORIZATION},
+ * or if the underlying connection is reached through {@code unwrap} or
+ * {@code getConnection} on the connection, its statements, result sets or
+ * metadata. The tracked state is then cleared when the connection is closed.
+ * <p>
+ * Changes made on the server are not detected, such as a function that calls
+ * {@code set_config('role', ..., false)}. The check is therefore only used with
+ * {@code ROLE} affinity, which requires the {@code ROLE} to be changed only
+ * through Postrise.
+ *
+ * @see DataSourceSettings#setRoleAffinity(boolean)
+ */
+final class RoleTrackingConnection implements InvocationHandler {
+
+    /**
+     * SQL that may change the {@code ROLE} of the session.
+     */
+    private static final Pattern ROLE_SQL = Pattern.compile("role|authorization", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Methods that reach the underlying {@link Connection}.
+     */
+    private static final Set<String> UNWRAP_METHODS = new HashSet<>(Arrays.asList(
+            "unwrap", "getConnection", "getStatement"));
+
+    /**
+     * Types returned by the caller that are wrapped to keep tracking.
+     */
+    private static final Set<Class<?>> TRACKED_TYPES = new HashSet<>(Arrays.asList(
+            Statement.class, PreparedStatement.class, CallableStatement.class, ResultSet.class,
+            DatabaseMetaData.class));
+
+    /**
+     * Wrap the {@link Connection} to track {@code ROLE} changes by the caller.
+     *
+     * @param pooled     - the {@link Connection} borrowed from the pool.
+     * @param connection - the {@link Connection} to wrap, either the pooled
+     *                   connection or a wrapper of it.
+     * @param roles      - the {@code ROLE} tracker of the data source.
+     * @return the wrapped {@link Connection}.
+     */
+    static Connection wrap(final Connection pooled, final Connection connection, final ConnectionRoleTracker roles) {
+        return proxy(Connection.class, new RoleTrackingConnection(pooled, connection, roles));
+    }
+
+    private final Connection pooled;
+    private final Connection delegate;
+    private final ConnectionRoleTracker roles;
+    private boolean isRoleChanged;
+    private boolean isClosed;
+
+    private RoleTrackingConnection(final Connection pooled, final Connection delegate,
+            final ConnectionRoleTracker roles) {
+        this.pooled = pooled;
+        this.delegate = delegate;
+        this.roles = roles;
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return delegate.toString();
+            case "close":
+                return close();
+            case "unwrap":
+                isRoleChanged = true;
+                break;
+            case "prepareStatement":
+            case "prepareCall":
+            case "nativeSQL":
+                checkSql(args[0]);
+                break;
+            default:
+                break;
+        }
+        return track(method, call(delegate, method, args));
+    }
+
+    /**
+     * Forget the {@code ROLE} of the physical connection if it may have changed,
+     * then return the connection to the pool.
+     */
+    private Object close() throws SQLException {
+        if (isClosed) {
+            return null;
+        }
+        isClosed = true;
+        try {
+            if (isRoleChanged && !pooled.isClosed()) {
+                roles.clear(pooled);
+            }
+        } finally {
+            delegate.close();
+        }
+        return null;
+    }
+
+    private void checkSql(final Object sql) {
+        if (!isRoleChanged && sql instanceof String && ROLE_SQL.matcher((String) sql).find()) {
+            isRoleChanged = true;
+        }
+    }
+
+    /**
+     * Wrap a statement, result set or metadata returned to the caller.
+     */
+    private Object track(final Method method, final Object result) {
+        final Class<?> type = method.getReturnType();
+        if (result == null || !TRACKED_TYPES.contains(type)) {
+            return result;
+        }
+        return proxy(type, new TrackedHandler(result));
+    }
+
+    /**
+     * Checks the SQL passed to an object created by the caller and marks the
+     * {@code ROLE} as changed when the underlying {@link Connection} is reached.
+     */
+    private final class TrackedHandler implements InvocationHandler {
+
+        private final Object target;
+
+        private TrackedHandler(final Object target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            final String name = method.getName();
+            if (UNWRAP_METHODS.contains(name)) {
+                isRoleChanged = true;
+            } else if ((name.startsWith("execute") || "addBatch".equals(name)) && args != null) {
+                checkSql(args[0]);
+            }
+            return track(method, call(target, method, args));
+        }
+    }
+
+    private static <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(RoleTrackingConnection.class.getClassLoader(),
+                new Class<?>[] { type }, handler));
+    }
+
+    private static Object call(final Object target, final Method method, final Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (final InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.adonix.postrise;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps the current row of a streamed query.
+ * 
+ * @param <T> the type of each row.
+ * @see DataSourceContext#stream(String, RowMapper, Object...)
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+
+    /**
+     * Map the current row. The {@link ResultSet} must not be advanced or closed.
+     * 
+     * @param rs - the {@link ResultSet} positioned on the current row.
+     * @return the mapped row, which may be {@code null}.
+     * @throws SQLException if a database access error occurs.
+     */
+    T map(ResultSet rs) throws SQLException;
+}
@@ -18,7 +18,11 @@ package org.adonix.postrise;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A logical parent for managing data sources.
@@ -80,6 +84,39 @@ public interface Server extends AutoCloseable {
      */
     Connection getConnection(String databaseName, String roleName) throws SQLException;
 
+    /**
+     * Run the work in a transaction with the {@code ROLE} set only for that
+     * transaction.
+     * 
+     * @param <T>          the type of the result.
+     * @param databaseName - the name of the target database.
+     * @param roleName     - the {@code ROLE} to be set for the transaction or
+     *                     {@code null} for the {@code LOGIN} user.
+     * @param work         - the work to run in the transaction.
+     * @return the result of the work.
+     * @throws SQLException if a database access error occurs.
+     * @see DataSourceContext#inTransaction(String, TransactionCallback)
+     */
+    <T> T inTransaction(String databaseName, String roleName, TransactionCallback<T> work) throws SQLException;
+
+    /**
+     * Run the work in a transaction with the isolation level and the
+     * {@code ROLE} set only for that transaction.
+     * 
+     * @param <T>          the type of the result.
+     * @param databaseName - the name of the target database.
+     * @param roleName     - the {@code ROLE} to be set for the transaction or
+     *                     {@code null} for the {@code LOGIN} user.
+     * @param isolation    - one of the {@link Connection} transaction isolation
+     *                     levels other than {@link Connection#TRANSACTION_NONE}.
+     * @param work         - the work to run in the transaction.
+     * @return the result of the work.
+     * @throws SQLException if a database access error occurs.
+     * @see DataSourceContext#inTransaction(String, int, TransactionCallback)
+     */
+    <T> T inTransaction(String databaseName, String roleName, int isolation, TransactionCallback<T> work)
+            throws SQLException;
+
     /**
      * Get the {@link DataSourceContext} specified by the database name.
      * 
@@ -88,6 +125,30 @@ public interface Server extends AutoCloseable {
      */
     DataSourceContext getDataSource(String databaseName);
 
+    /**
+     * Get the {@link DataSourceContext} specified by the database name without
+     * blocking. A data source is created at most once, and concurrent requests for
+     * the same database share the pending creation.
+     * 
+     * @param databaseName - the name of the target database.
+     * @return a future completed with a live {@link DataSourceContext} for the
+     *         target database, or completed exceptionally with a
+     *         {@link CreateDataSourceException}.
+     */
+    CompletableFuture<DataSourceContext> getDataSourceAsync(String databaseName);
+
+    /**
+     * Create the data sources for the databases in parallel and fill each
+     * connection pool to its minimum idle size. A failure for one database does
+     * not prevent the others from being created.
+     * 
+     * @param databaseNames - the names of the target databases.
+     * @param parallelism   - the maximum number of data sources created at the
+     *                      same time.
+     * @return the result for each database in the order provided.
+     */
+    List<PrewarmResult> prewarm(Collection<String> databaseNames, int parallelism);
+
     /**
      * The set of database names for which live data sources currently exist on this
      * {@link Server}.
@@ -128,6 +189,22 @@ public interface Server extends AutoCloseable {
      */
     int getThreadsAwaitingConnection();
 
+    /**
+     * Stop handing out connections, wait for active connections to be returned,
+     * then close the server. While draining, {@link #getConnection(String)},
+     * {@link #getDataSource(String)} and the other data source requests fail
+     * fast with an {@link IllegalStateException}. Connections already borrowed
+     * are unaffected until the server closes.
+     * <p>
+     * The server is closed when the timeout elapses even if connections are
+     * still active. Has no effect if the server is not open.
+     * 
+     * @param timeout - the maximum time to wait for active connections.
+     * @return {@code true} if all connections were returned before the server
+     *         closed.
+     */
+    boolean drain(Duration timeout);
+
     /**
      * Close the server and all data sources contained within.
      * <p>
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.adonix.postrise;
+
+/**
+ * The session state cleared when a {@link java.sql.Connection Connection} is
+ * returned to the pool.
+ * 
+ * @see DataSourceSettings#setSessionReset(SessionReset...)
+ */
+public enum SessionReset {
+
+    /**
+     * {@code RESET ROLE} reverts the {@code ROLE} to the {@code LOGIN} user.
+     */
+    ROLE("RESET ROLE"),
+
+    /**
+     * {@code DISCARD TEMP} drops all temporary tables.
+     */
+    TEMP("DISCARD TEMP"),
+
+    /**
+     * {@code RESET ALL} reverts all run-time parameters, including the
+     * {@code search_path}, to their defaults. PostgreSQL excludes the
+     * {@code ROLE} from {@code RESET ALL}; use {@link #ROLE} to revert it.
+     */
+    ALL("RESET ALL"),
+
+    /**
+     * {@code DEALLOCATE ALL} releases all prepared statements. The driver
+     * detects the command and prepares its cached statements again on next use.
+     */
+    PREPARED("DEALLOCATE ALL"),
+
+    /**
+     * {@code RESET search_path} reverts the schema search path to its default.
+     */
+    SEARCH_PATH("RESET search_path");
+
+    private final String sql;
+
+    SessionReset(final String sql) {
+        this.sql = sql;
+    }
+
+    /**
+     * Get the SQL statement for this reset stage.
+     * 
+     * @return the SQL statement.
+     */
+    public String getSql() {
+        return sql;
+    }
+}
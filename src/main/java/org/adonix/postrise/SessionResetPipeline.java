@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.adonix.postrise;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Clears session state on a background thread when a leased
+ * {@link Connection} is closed. All stages are sent in a single batch before
+ * the connection is returned to the pool, so the caller and the next borrower
+ * never wait for the reset.
+ * <p>
+ * A connection that fails to reset is evicted from the pool.
+ */
+final class SessionResetPipeline {
+
+    private static final Logger LOGGER = LogManager.getLogger(SessionResetPipeline.class);
+
+    private static final Executor EXECUTOR = Executors.newCachedThreadPool(new DaemonThreadFactory("postrise-reset"));
+
+    private final PostriseDataSource dataSource;
+    private final Set<SessionReset> stages;
+    private final String sql;
+
+    /**
+     * @param dataSource - the data source that owns the pooled connections.
+     * @param stages     - the reset stages in execution order.
+     */
+    SessionResetPipeline(final PostriseDataSource dataSource, final Set<SessionReset> stages) {
+        this.dataSource = dataSource;
+        this.stages = Collections.unmodifiableSet(EnumSet.copyOf(stages));
+        this.sql = this.stages.stream().map(SessionReset::getSql).collect(Collectors.joining("; "));
+    }
+
+    /**
+     * Get the reset stages.
+     * 
+     * @return the unmodifiable reset stages.
+     */
+    Set<SessionReset> getStages() {
+        return stages;
+    }
+
+    /**
+     * Reset the pooled connection and close the leased connection on a
+     * background thread.
+     * 
+     * @param pooled      - the {@link Connection} borrowed from the pool.
+     * @param leased      - the {@link Connection} returned to the caller, closed
+     *                    after the reset.
+     * @param afterReturn - runs after the connection is back in the pool.
+     */
+    void release(final Connection pooled, final Connection leased, final Runnable afterReturn) {
+        EXECUTOR.execute(() -> {
+            try {
+                reset(pooled);
+                leased.close();
+            } catch (final SQLException e) {
+                LOGGER.warn("{}: session reset failed: {}", dataSource, e.getMessage());
+            } finally {
+                afterReturn.run();
+            }
+        });
+    }
+
+    private void reset(final Connection pooled) {
+        try {
+            if (!pooled.getAutoCommit()) {
+                pooled.rollback();
+                pooled.setAutoCommit(true);
+            }
+            try (final Statement stmt = pooled.createStatement()) {
+                stmt.execute(sql);
+            }
+            dataSource.afterSessionReset(pooled, stages);
+        } catch (final SQLException e) {
+            LOGGER.warn("{}: session reset failed, evicting connection: {}", dataSource, e.getMessage());
+            dataSource.evict(pooled);
+        }
+    }
+}
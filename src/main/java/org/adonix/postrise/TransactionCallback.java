@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.adonix.postrise;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * The work done in a transaction started by
+ * {@link DataSourceContext#inTransaction(String, TransactionCallback)}.
+ *
+ * @param <T> the type of the result.
+ */
+@FunctionalInterface
+public interface TransactionCallback<T> {
+
+    /**
+     * Do the work of the transaction. The transaction is committed when this
+     * method returns and rolled back if it throws.
+     * 
+     * @param connection - the {@link Connection} in the transaction with the
+     *                   {@code ROLE}, if any, set.
+     * @return the result of the work.
+     * @throws SQLException if a database access error occurs.
+     */
+    T execute(Connection connection) throws SQLException;
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.adonix.postrise;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link Connection} wrapper passed to a {@link TransactionCallback}. The
+ * transaction and the lease belong to the data source, so the {@link Connection}
+ * methods that end the transaction or the lease are rejected, and so is SQL
+ * passed to the connection or its statements that ends the transaction, such
+ * as {@code COMMIT}, {@code ROLLBACK} or {@code END}.
+ * <p>
+ * The SQL is checked without a round trip. Work that reaches the underlying
+ * connection through {@code unwrap} or {@code getConnection} on the connection,
+ * its statements, result sets or metadata is not checked, so the data source
+ * then checks the {@code ROLE} before it commits.
+ */
+final class TransactionConnection implements InvocationHandler {
+
+    /**
+     * {@link Connection} methods that would end the transaction or the lease.
+     */
+    private static final Set<String> TRANSACTION_METHODS = new HashSet<>(Arrays.asList(
+            "commit", "setAutoCommit", "close", "abort"));
+
+    /**
+     * Methods that reach the underlying {@link Connection}.
+     */
+    private static final Set<String> UNWRAP_METHODS = new HashSet<>(Arrays.asList(
+            "unwrap", "getConnection", "getStatement"));
+
+    /**
+     * Types returned by the caller that are wrapped to keep checking the SQL.
+     */
+    private static final Set<Class<?>> CHECKED_TYPES = new HashSet<>(Arrays.asList(
+            Statement.class, PreparedStatement.class, CallableStatement.class, ResultSet.class,
+            DatabaseMetaData.class));
+
+    /**
+     * A cheap test for SQL that may end the transaction.
+     */
+    private static final Pattern END_KEYWORD = Pattern.compile("commit|rollback|end|abort|prepare",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * String literals, quoted identifiers, dollar-quoted bodies and comments,
+     * which are removed before looking for a statement that ends the
+     * transaction. A function body may contain {@code END;}.
+     */
+    private static final Pattern QUOTED = Pattern.compile(
+            "'(?:[^']|'')*'|\"(?:[^\"]|\"\")*\"|\\$(\\w*)\\$.*?\\$\\1\\$|--[^\n]*|/\\*.*?\\*/",
+            Pattern.DOTALL);
+
+    /**
+     * A statement that ends the transaction. {@code ROLLBACK TO SAVEPOINT} keeps
+     * the transaction open.
+     */
+    private static final Pattern END_SQL = Pattern.compile(
+            "(?:^|;)\\s*(?:commit|end|abort|prepare\\s+transaction"
+                    + "|rollback(?!\\s+(?:work\\s+|transaction\\s+)?to\\b))\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final String INVALID_TRANSACTION_STATE = "25000";
+
+    /**
+     * Wrap the {@link Connection} of a transaction.
+     *
+     * @param connection - the leased {@link Connection} in the transaction.
+     * @return the handler of the wrapped {@link Connection}.
+     */
+    static TransactionConnection wrap(final Connection connection) {
+        return new TransactionConnection(connection);
+    }
+
+    private final Connection delegate;
+    private final Connection connection;
+    private boolean isUnwrapped;
+
+    private TransactionConnection(final Connection delegate) {
+        this.delegate = delegate;
+        this.connection = proxy(Connection.class, this);
+    }
+
+    /**
+     * @return the wrapped {@link Connection} for the callback.
+     */
+    Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * @return {@code true} if the callback reached the underlying connection, so
+     *         its SQL was not checked.
+     */
+    boolean isUnwrapped() {
+        return isUnwrapped;
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        final String name = method.getName();
+        switch (name) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return delegate.toString();
+            case "rollback":
+                // Rolling back to a savepoint keeps the transaction open.
+                if (args == null) {
+                    throw notAllowed(name + "()");
+                }
+                break;
+            case "unwrap":
+                isUnwrapped = true;
+                break;
+            case "prepareStatement":
+            case "prepareCall":
+                checkSql(args[0]);
+                break;
+            default:
+                if (TRANSACTION_METHODS.contains(name)) {
+                    throw notAllowed(name + "()");
+                }
+                break;
+        }
+        return check(method, call(delegate, method, args));
+    }
+
+    private static void checkSql(final Object sql) throws SQLException {
+        if (sql instanceof String && END_KEYWORD.matcher((String) sql).find()
+                && END_SQL.matcher(QUOTED.matcher((String) sql).replaceAll(" ")).find()) {
+            throw notAllowed("SQL that ends the transaction");
+        }
+    }
+
+    private static SQLException notAllowed(final String what) {
+        return new SQLException(what + " is not allowed in a transaction managed by Postrise",
+                INVALID_TRANSACTION_STATE);
+    }
+
+    /**
+     * Wrap a statement, result set or metadata returned to the caller.
+     */
+    private Object check(final Method method, final Object result) {
+        final Class<?> type = method.getReturnType();
+        if (result == null || !CHECKED_TYPES.contains(type)) {
+            return result;
+        }
+        return proxy(type, new CheckedHandler(result));
+    }
+
+    /**
+     * Checks the SQL passed to an object created by the caller and records when
+     * the underlying {@link Connection} is reached.
+     */
+    private final class CheckedHandler implements InvocationHandler {
+
+        private final Object target;
+
+        private CheckedHandler(final Object target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            final String name = method.getName();
+            if (UNWRAP_METHODS.contains(name)) {
+                isUnwrapped = true;
+            } else if ((name.startsWith("execute") || "addBatch".equals(name)) && args != null) {
+                checkSql(args[0]);
+            }
+            return check(method, call(target, method, args));
+        }
+    }
+
+    private static <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(TransactionConnection.class.getClassLoader(),
+                new Class<?>[] { type }, handler));
+    }
+
+    private static Object call(final Object target, final Method method, final Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (final InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.adonix.postrise;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Collects small writes for a data source and sends them to the database in
+ * batches on a background thread. A batch is flushed when
+ * {@link DataSourceContext#getWriteBehindBatchSize()} writes are waiting or
+ * {@link DataSourceContext#getWriteBehindFlushInterval()} has passed since the
+ * first of them, so a single connection carries many writes at a time.
+ * <p>
+ * Consecutive writes with the same SQL are sent as one JDBC batch, so the
+ * order of all writes is preserved. Enable the {@code reWriteBatchedInserts}
+ * data source property to have the driver rewrite batched {@code INSERT}
+ * statements into multi-row inserts. Each flush runs in a single transaction:
+ * if any write fails, every write of the flush fails.
+ * <p>
+ * The queue holds at most {@link DataSourceContext#getWriteBehindCapacity()}
+ * writes. When it is full, {@link #submit(String, Object...)} waits for space
+ * for up to the connection timeout.
+ * <p>
+ * The writes run as the {@code LOGIN} user, or with the {@code ROLE} of the
+ * queue set only for the transaction of each flush.
+ *
+ * @see DataSourceContext#getWriteBehind()
+ * @see DataSourceContext#getWriteBehind(String)
+ */
+public final class WriteBehindQueue {
+
+    private static final Logger LOGGER = LogManager.getLogger(WriteBehindQueue.class);
+
+    /**
+     * The longest an idle flush thread waits before checking if the queue was
+     * closed.
+     */
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    /**
+     * A write waiting to be flushed.
+     */
+    private static final class Write {
+        private final String sql;
+        private final Object[] parameters;
+        private final CompletableFuture<Integer> future = new CompletableFuture<>();
+
+        private Write(final String sql, final Object[] parameters) {
+            this.sql = sql;
+            this.parameters = parameters;
+        }
+    }
+
+    private final PostriseDataSource dataSource;
+    private final String roleName;
+    private final BlockingQueue<Write> queue;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final Thread flusher;
+    private volatile boolean isClosed;
+
+    /**
+     * @param dataSource - the data source that leases the connections.
+     * @param roleName   - the {@code ROLE} of the writes or {@code null} for the
+     *                   {@code LOGIN} user.
+     */
+    WriteBehindQueue(final PostriseDataSource dataSource, final String roleName) {
+        this.dataSource = dataSource;
+        this.roleName = roleName;
+        this.queue = new ArrayBlockingQueue<>(dataSource.getWriteBehindCapacity());
+        this.batchSize = dataSource.getWriteBehindBatchSize();
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(dataSource.getWriteBehindFlushInterval());
+        this.flusher = new DaemonThreadFactory("postrise-write-behind-" + dataSource.getDatabaseName()
+                + (roleName == null ? "" : "-" + roleName)).newThread(this::run);
+        this.flusher.start();
+    }
+
+    /**
+     * Queue a write to be sent with the next batch.
+     *
+     * @param sql        - the {@code INSERT}, {@code UPDATE} or {@code DELETE}
+     *                   statement.
+     * @param parameters - the statement parameters.
+     * @return a future completed with the update count after the batch is
+     *         committed, or completed exceptionally if the batch failed. The
+     *         update count is {@link java.sql.Statement#SUCCESS_NO_INFO} when
+     *         the driver rewrote the batch. Dependent actions run on the flush
+     *         thread unless an async method is used.
+     * @throws SQLTransientException if the queue stayed full for the connection
+     *                               timeout.
+     * @throws SQLException          if the queue is closed or the thread was
+     *                               interrupted.
+     */
+    public CompletableFuture<Integer> submit(final String sql, final Object... parameters) throws SQLException {
+        Guard.check("sql", sql);
+        Guard.check("parameters", parameters);
+        checkOpen();
+        final Write write = new Write(sql, parameters.clone());
+        final long timeoutMs = dataSource.getConnectionTimeout();
+        try {
+            if (!queue.offer(write, timeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new SQLTransientException(dataSource.getDatabaseName()
+                        + " - write-behind queue is full, request timed out after " + timeoutMs + "ms.");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(dataSource.getDatabaseName() + " - Interrupted while queueing a write", e);
+        }
+        // The flush thread may have stopped while this write was queued.
+        if (isClosed && queue.remove(write)) {
+            checkOpen();
+        }
+        return write.future;
+    }
+
+    /**
+     * Get the {@code ROLE} of the writes.
+     *
+     * @return the {@code ROLE} or {@code null} for the {@code LOGIN} user.
+     */
+    public String getRoleName() {
+        return roleName;
+    }
+
+    /**
+     * Get the number of writes waiting to be flushed.
+     *
+     * @return the number of queued writes.
+     */
+    public int getPendingWrites() {
+        return queue.size();
+    }
+
+    /**
+     * Stop accepting writes, flush the writes already queued and stop the flush
+     * thread. The flush is given up to the connection timeout, after which the
+     * writes still queued fail.
+     */
+    void close() {
+        isClosed = true;
+        try {
+            flusher.join(dataSource.getConnectionTimeout());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        final SQLException closed = closedException();
+        int failed = 0;
+        Write write;
+        while ((write = queue.poll()) != null) {
+            write.future.completeExceptionally(closed);
+            failed++;
+        }
+        if (failed > 0) {
+            LOGGER.warn("{}: write-behind queue closed with {} unflushed write(s)", dataSource, failed);
+        }
+    }
+
+    private void checkOpen() throws SQLException {
+        if (isClosed) {
+            throw closedException();
+        }
+    }
+
+    private SQLException closedException() {
+        return new SQLException(dataSource.getDatabaseName() + " - write-behind queue is closed");
+    }
+
+    private void run() {
+        final List<Write> batch = new ArrayList<>(batchSize);
+        try {
+            while (true) {
+                final Write first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (isClosed) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                fill(batch);
+                flush(batch);
+                batch.clear();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Add writes to the batch until it is full or the flush interval has passed
+     * since its first write. A closing queue flushes without waiting.
+     */
+    private void fill(final List<Write> batch) throws InterruptedException {
+        final long deadline = System.nanoTime() + flushIntervalNanos;
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            final long remaining = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || remaining <= 0 || isClosed) {
+                return;
+            }
+            final Write next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    /**
+     * Send the batch in a single transaction and complete the futures.
+     */
+    private void flush(final List<Write> batch) {
+        final int[] counts = new int[batch.size()];
+        try (final Connection connection = dataSource.beginTransaction(roleName, false)) {
+            try {
+                int start = 0;
+                while (start < batch.size()) {
+                    start = executeBatch(connection, batch, start, counts);
+                }
+                connection.commit();
+            } catch (final SQLException | RuntimeException e) {
+                try {
+                    connection.rollback();
+                } catch (final SQLException rollback) {
+                    e.addSuppressed(rollback);
+                }
+                throw e;
+            }
+        } catch (final Exception e) {
+            LOGGER.warn("{}: write-behind flush of {} write(s) failed: {}", dataSource, batch.size(), e.getMessage());
+            batch.forEach(write -> write.future.completeExceptionally(e));
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).future.complete(counts[i]);
+        }
+    }
+
+    /**
+     * Send the run of consecutive writes with the same SQL as one JDBC batch.
+     *
+     * @return the index of the first write after the run.
+     */
+    private static int executeBatch(final Connection connection, final List<Write> batch, final int start,
+            final int[] counts) throws SQLException {
+        final String sql = batch.get(start).sql;
+        int end = start;
+        try (final PreparedStatement stmt = connection.prepareStatement(sql)) {
+            while (end < batch.size() && sql.equals(batch.get(end).sql)) {
+                final Object[] parameters = batch.get(end).parameters;
+                for (int i = 0; i < parameters.length; i++) {
+                    stmt.setObject(i + 1, parameters[i]);
+                }
+                stmt.addBatch();
+                end++;
+            }
+            final int[] result = stmt.executeBatch();
+            System.arraycopy(result, 0, counts, start, result.length);
+        }
+        return end;
+    }
+}
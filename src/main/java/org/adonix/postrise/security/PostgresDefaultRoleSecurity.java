@@ -29,6 +29,8 @@ class PostgresDefaultRoleSecurity implements RoleSecurityListener {
 
     private static final Logger LOGGER = LogManager.getLogger(PostgresDefaultRoleSecurity.class);
 
+    private final PostgresRoleCache cache;
+
     /**
      * Constructs a new package-private {@code PostgresDefaultRoleSecurity}
      * instance.
@@ -37,6 +39,33 @@ class PostgresDefaultRoleSecurity implements RoleSecurityListener {
      * {@link RoleSecurityProvider}.
      */
     PostgresDefaultRoleSecurity() {
+        this(null);
+    }
+
+    /**
+     * Constructs a new package-private {@code PostgresDefaultRoleSecurity}
+     * instance with a {@link PostgresRoleCache}.
+     * <p>
+     * Instances are created and accessed via {@link RoleSecurityProvider}.
+     * 
+     * @param cache - the {@code ROLE} cache for a single data source or
+     *              {@code null} to always query the {@code pg_roles} view.
+     */
+    PostgresDefaultRoleSecurity(final PostgresRoleCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Get the {@code ROLE} from the cache if present, otherwise from the
+     * {@code pg_roles} view.
+     * 
+     * @param connection - an open PostgreSQL {@link Connection}.
+     * @param roleName   - the name of the {@code ROLE}.
+     * @return the {@link PostgresRole}.
+     * @throws SQLException if a database access error occurs.
+     */
+    final PostgresRole getRole(final Connection connection, final String roleName) throws SQLException {
+        return cache == null ? PostgresRoleDAO.getRole(connection, roleName) : cache.getRole(connection, roleName);
     }
 
     /**
@@ -47,7 +76,7 @@ class PostgresDefaultRoleSecurity implements RoleSecurityListener {
     @Override
     public void onLogin(final DataSourceContext context, final Connection connection) throws SQLException {
 
-        final PostgresRole role = PostgresRoleDAO.getRole(connection, context.getUsername());
+        final PostgresRole role = getRole(connection, context.getUsername());
 
         if (role.isSuperUser()) {
             throw new RoleSecurityException("\"" + role.getRoleName() + "\" is a SUPERUSER role");
@@ -62,5 +91,9 @@ class PostgresDefaultRoleSecurity implements RoleSecurityListener {
             LOGGER.warn("{}: ROLE connection limit ({}) < Maximum Pool Size ({})",
                     context, connectionLimit, maxPoolSize);
         }
+
+        if (cache != null) {
+            cache.startRefresh(context);
+        }
     }
 }
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.adonix.postrise.security;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.adonix.postrise.DaemonThreadFactory;
+import org.adonix.postrise.DataSourceContext;
+import org.adonix.postrise.Guard;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A bounded cache of {@link PostgresRole} lookups with time-based expiry. Each
+ * data source should use its own cache.
+ * <p>
+ * When a refresh interval is provided, every cached {@code ROLE} is re-read
+ * from the {@code pg_roles} view with a single query on a background thread,
+ * so lookups on the hot path never wait for the database while privilege
+ * changes are still detected within the refresh interval.
+ *
+ * @see RoleSecurityProvider#postgresDefaultRoleSecurity(PostgresRoleCache)
+ * @see RoleSecurityProvider#postgresStrictRoleSecurity(PostgresRoleCache)
+ */
+public final class PostgresRoleCache {
+
+    private static final Logger LOGGER = LogManager.getLogger(PostgresRoleCache.class);
+
+    /**
+     * Runs background refresh for all caches on a single daemon thread.
+     */
+    private static final class Scheduler {
+        private static final ScheduledExecutorService INSTANCE = Executors
+                .newSingleThreadScheduledExecutor(new DaemonThreadFactory("postrise-role-cache"));
+    }
+
+    private static final class Entry {
+        private final PostgresRole role;
+        private final long expiresAt;
+
+        private Entry(final PostgresRole role, final long expiresAt) {
+            this.role = role;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final Map<String, Entry> roles = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final long timeToLiveNanos;
+    private final Duration refreshInterval;
+    private final Lock refreshLock = new ReentrantLock();
+    private ScheduledFuture<?> refreshTask;
+    private DataSourceContext refreshContext;
+
+    /**
+     * Create a {@code ROLE} cache without background refresh.
+     *
+     * @param maxSize    - the maximum number of cached {@code ROLE} entries.
+     * @param timeToLive - the maximum age of a cached {@code ROLE}.
+     */
+    public PostgresRoleCache(final int maxSize, final Duration timeToLive) {
+        this(maxSize, timeToLive, Duration.ZERO);
+    }
+
+    /**
+     * Create a {@code ROLE} cache with background refresh.
+     *
+     * @param maxSize         - the maximum number of cached {@code ROLE} entries.
+     * @param timeToLive      - the maximum age of a cached {@code ROLE}.
+     * @param refreshInterval - the interval between bulk refreshes of all cached
+     *                        entries, {@link Duration#ZERO} to disable. Should be
+     *                        shorter than the time to live.
+     */
+    public PostgresRoleCache(final int maxSize, final Duration timeToLive, final Duration refreshInterval) {
+        Guard.check("timeToLive", timeToLive);
+        Guard.check("refreshInterval", refreshInterval);
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Illegal maxSize " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.refreshInterval = refreshInterval;
+    }
+
+    /**
+     * Get the {@code ROLE} from the cache, or from the {@code pg_roles} view if it
+     * is not cached or has expired.
+     *
+     * @param connection - an open PostgreSQL {@link Connection}.
+     * @param roleName   - the name of the {@code ROLE}.
+     * @return the {@link PostgresRole}.
+     * @throws RoleSecurityException if the {@code ROLE} does not exist.
+     * @throws SQLException          if a database access error occurs.
+     */
+    public PostgresRole getRole(final Connection connection, final String roleName) throws SQLException {
+        final Entry entry = roles.get(roleName);
+        if (entry != null && System.nanoTime() - entry.expiresAt < 0) {
+            return entry.role;
+        }
+        final PostgresRole role = PostgresRoleDAO.getRole(connection, roleName);
+        put(role);
+        return role;
+    }
+
+    /**
+     * Remove the {@code ROLE} from the cache.
+     *
+     * @param roleName - the name of the {@code ROLE}.
+     */
+    public void invalidate(final String roleName) {
+        roles.remove(roleName);
+    }
+
+    /**
+     * Remove all {@code ROLE} entries from the cache.
+     */
+    public void invalidateAll() {
+        roles.clear();
+    }
+
+    /**
+     * Re-read all cached {@code ROLE} entries from the {@code pg_roles} view with
+     * a single query. Entries for a {@code ROLE} that no longer exists are removed.
+     *
+     * @param connection - an open PostgreSQL {@link Connection}.
+     * @throws SQLException if a database access error occurs.
+     */
+    public void refresh(final Connection connection) throws SQLException {
+        final Set<String> roleNames = new HashSet<>(roles.keySet());
+        if (roleNames.isEmpty()) {
+            return;
+        }
+        final List<PostgresRole> found = PostgresRoleDAO.getRoles(connection, new ArrayList<>(roleNames));
+        for (final PostgresRole role : found) {
+            put(role);
+            roleNames.remove(role.getRoleName());
+        }
+        roleNames.forEach(roles::remove);
+    }
+
+    /**
+     * Start the background refresh for the data source if a refresh interval was
+     * provided. Subsequent calls for the same data source have no effect. The
+     * refresh stops when the data source is closed, and moves to a data source
+     * that replaced it, for example after eviction.
+     *
+     * @param context - the data source used to refresh the cache.
+     */
+    void startRefresh(final DataSourceContext context) {
+        refreshLock.lock();
+        try {
+            if (refreshInterval.isZero() || context == refreshContext) {
+                return;
+            }
+            if (refreshTask != null) {
+                refreshTask.cancel(false);
+            }
+            final long interval = refreshInterval.toNanos();
+            refreshContext = context;
+            refreshTask = Scheduler.INSTANCE.scheduleWithFixedDelay(() -> refresh(context),
+                    interval, interval, TimeUnit.NANOSECONDS);
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Stop the background refresh if it still runs for the closed data source,
+     * so it can start again for the next data source.
+     */
+    private void stopRefresh(final DataSourceContext context) {
+        refreshLock.lock();
+        try {
+            if (context == refreshContext) {
+                refreshTask.cancel(false);
+                refreshTask = null;
+                refreshContext = null;
+            }
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * The refresh borrows a background connection, so it never keeps an idle
+     * data source from being evicted.
+     */
+    private void refresh(final DataSourceContext context) {
+        if (context.isClosed()) {
+            stopRefresh(context);
+            return;
+        }
+        try (final Connection connection = context.getBackgroundConnection()) {
+            refresh(connection);
+        } catch (final Exception e) {
+            LOGGER.warn("{}: ROLE cache refresh failed: {}", context, e.getMessage());
+        }
+    }
+
+    private void put(final PostgresRole role) {
+        if (roles.size() >= maxSize && !roles.containsKey(role.getRoleName())) {
+            evict();
+        }
+        roles.put(role.getRoleName(), new Entry(role, System.nanoTime() + timeToLiveNanos));
+    }
+
+    /**
+     * Remove the entry closest to expiry to make room for a new entry.
+     */
+    private void evict() {
+        String oldest = null;
+        long oldestExpiresAt = 0;
+        for (final Map.Entry<String, Entry> entry : roles.entrySet()) {
+            final long expiresAt = entry.getValue().expiresAt;
+            if (oldest == null || expiresAt - oldestExpiresAt < 0) {
+                oldest = entry.getKey();
+                oldestExpiresAt = expiresAt;
+            }
+        }
+        if (oldest != null) {
+            roles.remove(oldest);
+        }
+    }
+}
@@ -20,7 +20,8 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Data Access Object provides PostgreSQL {@code ROLE} functionality.
@@ -34,6 +35,11 @@ public abstract class PostgresRoleDAO {
     private PostgresRoleDAO() {
     }
 
+    /**
+     * The statements of this class stay prepared on each physical connection.
+     */
+    private static final PreparedStatementCache STATEMENTS = new PreparedStatementCache();
+
     /**
      * PostgreSQL specific statement to {@code SET ROLE} on the {@link Connection}.
      */
@@ -48,10 +54,70 @@ public abstract class PostgresRoleDAO {
      * @throws SQLException if a database access or {@code ROLE} error occurs.
      */
     public static final void setRole(final Connection connection, final String roleName) throws SQLException {
-        try (final PreparedStatement stmt = connection.prepareStatement(SQL_SET_ROLE)) {
+        STATEMENTS.execute(connection, SQL_SET_ROLE, stmt -> {
+            stmt.setString(1, roleName);
+            return stmt.execute();
+        });
+    }
+
+    /**
+     * PostgreSQL specific statement to {@code SET LOCAL ROLE} on the
+     * {@link Connection}.
+     */
+    private static final String SQL_SET_LOCAL_ROLE = "SELECT set_config('ROLE', ?, true)";
+
+    /**
+     * Sets the {@code ROLE} on a {@link Connection} until the end of the current
+     * transaction. The {@code ROLE} reverts on {@code COMMIT} or
+     * {@code ROLLBACK}, so no {@code RESET ROLE} is needed afterwards.
+     * 
+     * @param connection - the {@link Connection} with an open transaction on which
+     *                   the {@code ROLE} will be set.
+     * @param roleName   - the {@code ROLE} to be set.
+     * @throws SQLException if a database access or {@code ROLE} error occurs.
+     */
+    public static final void setLocalRole(final Connection connection, final String roleName) throws SQLException {
+        STATEMENTS.execute(connection, SQL_SET_LOCAL_ROLE, stmt -> {
             stmt.setString(1, roleName);
-            stmt.execute();
-        }
+            return stmt.execute();
+        });
+    }
+
+    /**
+     * PostgreSQL specific statement to check the {@code ROLE} of the
+     * {@link Connection}.
+     */
+    private static final String SQL_IS_ROLE = "SELECT current_setting('ROLE') = ?";
+
+    /**
+     * Check that the {@code ROLE} is still set on a {@link Connection}, for
+     * example before committing a transaction that set it with
+     * {@link #setLocalRole(Connection, String)}.
+     * 
+     * @param connection - the {@link Connection} to check.
+     * @param roleName   - the expected {@code ROLE}.
+     * @return {@code true} if the {@code ROLE} is set.
+     * @throws SQLException if a database access error occurs.
+     */
+    public static final boolean isRole(final Connection connection, final String roleName) throws SQLException {
+        return STATEMENTS.execute(connection, SQL_IS_ROLE, stmt -> {
+            stmt.setString(1, roleName);
+            try (final ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        });
+    }
+
+    /**
+     * Get a statement that sets the {@code ROLE} with the name embedded as an
+     * escaped string constant. The statement has no parameters, so it can be sent
+     * in the same multi-statement batch as other SQL.
+     * 
+     * @param roleName - the {@code ROLE} to be set.
+     * @return the {@code set_config} statement for the {@code ROLE}.
+     */
+    public static final String getSetRoleSql(final String roleName) {
+        return "SELECT set_config('ROLE', E'" + roleName.replace("\\", "\\\\").replace("'", "\\'") + "', false)";
     }
 
     /**
@@ -66,9 +132,7 @@ public abstract class PostgresRoleDAO {
      * @throws SQLException if a database access error occurs.
      */
     public static final void resetRole(final Connection connection) throws SQLException {
-        try (final Statement stmt = connection.createStatement()) {
-            stmt.execute(SQL_RESET_ROLE);
-        }
+        STATEMENTS.execute(connection, SQL_RESET_ROLE, PreparedStatement::execute);
     }
 
     /**
@@ -88,6 +152,13 @@ public abstract class PostgresRoleDAO {
             "FROM pg_roles",
             "WHERE pg_roles.rolname = ? LIMIT 1");
 
+    /**
+     * PostgreSQL specific query to {@code SELECT} privileges for many
+     * {@code ROLE} names from the pg_roles view.
+     */
+    private static final String SQL_SELECT_ROLES_PRIVILEGES = SQL_SELECT_ROLE_PRIVILEGES
+            .replace("= ? LIMIT 1", "= ANY(?)");
+
     /**
      * Get the specified {@code ROLE} from the pg_roles view.
      * 
@@ -102,22 +173,50 @@ public abstract class PostgresRoleDAO {
      */
     public static final PostgresRole getRole(final Connection connection, final String roleName)
             throws SQLException {
-        try (final PreparedStatement stmt = connection.prepareStatement(SQL_SELECT_ROLE_PRIVILEGES)) {
+        return STATEMENTS.execute(connection, SQL_SELECT_ROLE_PRIVILEGES, stmt -> {
             stmt.setString(1, roleName);
             try (final ResultSet rs = stmt.executeQuery()) {
                 if (!rs.next()) {
                     throw new RoleSecurityException("role \"" + roleName + "\" does not exist");
                 }
-                return new PostgresRole()
-                        .setRoleName(rs.getString(1))
-                        .setSuperUser(rs.getBoolean(2))
-                        .setLoginRole(rs.getBoolean(3))
-                        .setInherit(rs.getBoolean(4))
-                        .setCreateRole(rs.getBoolean(5))
-                        .setCreateDbRole(rs.getBoolean(6))
-                        .setReplicationRole(rs.getBoolean(7))
-                        .setConnectionLimit(rs.getInt(8));
+                return toRole(rs);
             }
-        }
+        });
+    }
+
+    /**
+     * Get the specified {@code ROLE} entries from the pg_roles view with a single
+     * query. Names that do not exist are not included in the result.
+     * 
+     * @param connection - an open PostgreSQL {@link Connection}.
+     * @param roleNames  - the names of the {@code ROLE} entries to {@code SELECT}
+     *                   from the {@code pg_roles} view.
+     * @return the {@link PostgresRole} entries that exist.
+     * @throws SQLException if a database access error occurs.
+     */
+    public static final List<PostgresRole> getRoles(final Connection connection, final List<String> roleNames)
+            throws SQLException {
+        return STATEMENTS.execute(connection, SQL_SELECT_ROLES_PRIVILEGES, stmt -> {
+            final List<PostgresRole> roles = new ArrayList<>(roleNames.size());
+            stmt.setArray(1, connection.createArrayOf("text", roleNames.toArray()));
+            try (final ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    roles.add(toRole(rs));
+                }
+            }
+            return roles;
+        });
+    }
+
+    private static PostgresRole toRole(final ResultSet rs) throws SQLException {
+        return new PostgresRole()
+                .setRoleName(rs.getString(1))
+                .setSuperUser(rs.getBoolean(2))
+                .setLoginRole(rs.getBoolean(3))
+                .setInherit(rs.getBoolean(4))
+                .setCreateRole(rs.getBoolean(5))
+                .setCreateDbRole(rs.getBoolean(6))
+                .setReplicationRole(rs.getBoolean(7))
+                .setConnectionLimit(rs.getInt(8));
     }
 }
@@ -36,6 +36,18 @@ final class PostgresStrictRoleSecurity extends PostgresDefaultRoleSecurity {
     PostgresStrictRoleSecurity() {
     }
 
+    /**
+     * Constructs a new package-private {@code PostgresStrictRoleSecurity} instance
+     * with a {@link PostgresRoleCache}.
+     * <p>
+     * Instances are created and accessed via {@link RoleSecurityProvider}.
+     * 
+     * @param cache - the {@code ROLE} cache for a single data source.
+     */
+    PostgresStrictRoleSecurity(final PostgresRoleCache cache) {
+        super(cache);
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -44,7 +56,7 @@ final class PostgresStrictRoleSecurity extends PostgresDefaultRoleSecurity {
      */
     @Override
     public void onSetRole(Connection connection, String roleName) throws SQLException {
-        final PostgresRole role = PostgresRoleDAO.getRole(connection, roleName);
+        final PostgresRole role = getRole(connection, roleName);
         if (role.isSuperUser()) {
             throw new RoleSecurityException("\"" + role.getRoleName() + "\" is a SUPERUSER role");
         }
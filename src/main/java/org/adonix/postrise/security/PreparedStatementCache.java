@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2025 Ty Busby
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.adonix.postrise.security;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the fixed {@code ROLE} statements prepared on each physical
+ * {@link Connection} for the lifetime of the connection. Pools close the
+ * statements of a leased connection when it is returned, so statements are
+ * prepared on the unwrapped physical connection instead, and the driver can
+ * send each execution as a single Bind and Execute without a new Parse.
+ * <p>
+ * Statements run outside of the pool proxy are not visible to the pool, which
+ * only rolls back connections that it knows are dirty. Cached statements are
+ * therefore only used in auto-commit mode.
+ */
+final class PreparedStatementCache {
+
+    /**
+     * Runs the cached {@link PreparedStatement}.
+     *
+     * @param <T> - the result type.
+     */
+    @FunctionalInterface
+    interface StatementFunction<T> {
+        T apply(PreparedStatement stmt) throws SQLException;
+    }
+
+    private final Lock lock = new ReentrantLock();
+
+    /**
+     * Keyed by identity because a physical connection must never be confused
+     * with another connection that is equal to it. Entries for closed
+     * connections are removed when a new connection is added.
+     */
+    private final Map<Connection, Map<String, PreparedStatement>> statements = new IdentityHashMap<>();
+
+    /**
+     * Run the statement for the SQL on the {@link Connection}.
+     *
+     * @param connection - an open PostgreSQL {@link Connection}.
+     * @param sql        - the fixed SQL of the statement.
+     * @param function   - sets the parameters and executes the statement.
+     * @return the result of the function.
+     * @throws SQLException if a database access error occurs.
+     */
+    <T> T execute(final Connection connection, final String sql, final StatementFunction<T> function)
+            throws SQLException {
+        if (!connection.getAutoCommit()) {
+            try (final PreparedStatement stmt = connection.prepareStatement(sql)) {
+                return function.apply(stmt);
+            }
+        }
+        final Connection physical = connection.unwrap(Connection.class);
+        final Map<String, PreparedStatement> prepared = getStatements(physical);
+        PreparedStatement stmt = prepared.get(sql);
+        if (stmt == null) {
+            stmt = physical.prepareStatement(sql);
+            prepared.put(sql, stmt);
+        }
+        try {
+            return function.apply(stmt);
+        } catch (final RoleSecurityException e) {
+            throw e;
+        } catch (final SQLException e) {
+            // The statement may be unusable, so prepare it again on next use.
+            prepared.remove(sql);
+            close(stmt);
+            throw e;
+        }
+    }
+
+    /**
+     * A physical connection is only used by the thread leasing it, so the
+     * statements of one connection are never used concurrently.
+     */
+    private Map<String, PreparedStatement> getStatements(final Connection physical) {
+        lock.lock();
+        try {
+            Map<String, PreparedStatement> prepared = statements.get(physical);
+            if (prepared == null) {
+                removeClosed();
+                prepared = new HashMap<>();
+                statements.put(physical, prepared);
+            }
+            return prepared;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void removeClosed() {
+        final Iterator<Connection> connections = statements.keySet().iterator();
+        while (connections.hasNext()) {
+            if (isClosed(connections.next())) {
+                connections.remove();
+            }
+        }
+    }
+
+    private static boolean isClosed(final Connection connection) {
+        try {
+            return connection.isClosed();
+        } catch (final SQLException e) {
+            return true;
+        }
+    }
+
+    private static void close(final PreparedStatement stmt) {
+        try {
+            stmt.close();
+        } catch (final SQLException e) {
+            // The connection is already broken.
+        }
+    }
+}
@@ -44,4 +44,14 @@ public final class RoleSecurityException extends SQLException {
     public RoleSecurityException(final String message) {
         super(String.join(" ", MESSAGE_PREFIX, message), INVALID_ROLE);
     }
+
+    /**
+     * Create a {@code RoleSecurityException} caused by a database error.
+     * 
+     * @param message - the {@code ROLE} security error message.
+     * @param cause   - the database error that was mapped to this exception.
+     */
+    public RoleSecurityException(final String message, final Throwable cause) {
+        super(String.join(" ", MESSAGE_PREFIX, message), INVALID_ROLE, cause);
+    }
 }
@@ -16,6 +16,8 @@
 
 package org.adonix.postrise.security;
 
+import org.adonix.postrise.Guard;
+
 /**
  * Provides {@code static} access to {@link RoleSecurityListener
  * RoleSecurityListeners}.
@@ -42,4 +44,31 @@ public abstract class RoleSecurityProvider {
      * NO-OP {@link RoleSecurityListener}.
      */
     public static final RoleSecurityListener DISABLE_ROLE_SECURITY = new DisableRoleSecurity();
+
+    /**
+     * Create a default PostgreSQL {@link RoleSecurityListener} that reads
+     * {@code ROLE} privileges through the {@link PostgresRoleCache}. Use a new
+     * instance for each data source.
+     * 
+     * @param cache - the {@code ROLE} cache for a single data source.
+     * @return a new default {@link RoleSecurityListener}.
+     */
+    public static RoleSecurityListener postgresDefaultRoleSecurity(final PostgresRoleCache cache) {
+        Guard.check("cache", cache);
+        return new PostgresDefaultRoleSecurity(cache);
+    }
+
+    /**
+     * Create a strict PostgreSQL {@link RoleSecurityListener} that reads
+     * {@code ROLE} privileges through the {@link PostgresRoleCache}. Privilege
+     * changes are detected once the cached {@code ROLE} expires or is refreshed.
+     * Use a new instance for each data source.
+     * 
+     * @param cache - the {@code ROLE} cache for a single data source.
+     * @return a new strict {@link RoleSecurityListener}.
+     */
+    public static RoleSecurityListener postgresStrictRoleSecurity(final PostgresRoleCache cache) {
+        Guard.check("cache", cache);
+        return new PostgresStrictRoleSecurity(cache);
+    }
 }
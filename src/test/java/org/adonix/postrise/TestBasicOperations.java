@@ -16,24 +16,47 @@
 
 package org.adonix.postrise;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.adonix.postrise.security.RoleSecurityProvider.DISABLE_ROLE_SECURITY;
 import static org.adonix.postrise.security.RoleSecurityProvider.POSTGRES_DEFAULT_ROLE_SECURITY;
 import static org.adonix.postrise.security.RoleSecurityProvider.POSTGRES_STRICT_ROLE_SECURITY;
+import static org.adonix.postrise.security.RoleSecurityProvider.postgresStrictRoleSecurity;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.channels.Channels;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.adonix.postrise.security.PostgresRole;
+import org.adonix.postrise.security.PostgresRoleCache;
 import org.adonix.postrise.security.PostgresRoleDAO;
 import org.adonix.postrise.servers.PostgresContainer;
 import org.adonix.postrise.servers.TestDatabaseListener;
@@ -79,6 +102,33 @@ class TestBasicOperations {
         }
     }
 
+    @DisplayName("Asynchronous Single-Flight Data Source")
+    @Test
+    void testDataSourceAsync() throws Exception {
+        final DatabaseListener listener = new TestDatabaseListener(server, "with_login_no_super");
+        final CompletableFuture<DataSourceContext> first = server.getDataSourceAsync(listener.getDatabaseName());
+        final CompletableFuture<DataSourceContext> second = server.getDataSourceAsync(listener.getDatabaseName());
+        final DataSourceContext dataSource = first.get();
+        assertSame(dataSource, second.get());
+        assertSame(dataSource, server.getDataSource(listener.getDatabaseName()));
+        assertSame(dataSource, server.getDataSourceAsync(listener.getDatabaseName()).getNow(null));
+    }
+
+    @DisplayName("Prewarm Data Sources")
+    @Test
+    void testPrewarm() throws Exception {
+        final DatabaseListener first = new TestDatabaseListener(server, "with_login_no_super");
+        final DatabaseListener second = new TestDatabaseListener(server, "with_login_no_super");
+        final List<PrewarmResult> results = server.prewarm(
+                List.of(first.getDatabaseName(), "missing_database", second.getDatabaseName()), 2);
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertThat(results.get(1).getException()).isInstanceOf(CreateDataSourceException.class);
+        assertTrue(results.get(2).isSuccess());
+        assertEquals(5, server.getDataSource(first.getDatabaseName()).getTotalConnections());
+    }
+
     @DisplayName("Connection Limit Warning")
     @Test
     void testConnectionLimitWarning() throws SQLException {
@@ -111,6 +161,49 @@ class TestBasicOperations {
         }
     }
 
+    @DisplayName("Cached Strict Security SET ROLE")
+    @Test
+    void testCachedStrictSecuritySetRole() throws Exception {
+        final PostgresRoleCache cache = new PostgresRoleCache(16, Duration.ofMinutes(1), Duration.ofMillis(100));
+        final DatabaseListener listener = new TestDatabaseListener(server, postgresStrictRoleSecurity(cache),
+                "with_login_no_super");
+        for (int i = 0; i < 2; i++) {
+            try (final Connection connection = server.getConnection(listener.getDatabaseName(),
+                    "no_login_no_super")) {
+                assertEquals("no_login_no_super", cache.getRole(connection, "no_login_no_super").getRoleName());
+                cache.refresh(connection);
+            }
+        }
+
+        // A cached ROLE is returned without querying the pg_roles view.
+        try (final Connection connection = server.getConnection(listener.getDatabaseName())) {
+            connection.setAutoCommit(false);
+            final AtomicInteger queries = new AtomicInteger();
+            final Connection counting = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                        if ("prepareStatement".equals(method.getName()) && ((String) args[0]).contains("pg_roles")) {
+                            queries.incrementAndGet();
+                        }
+                        return method.invoke(connection, args);
+                    });
+            cache.invalidate("no_login_no_super");
+            for (int i = 0; i < 3; i++) {
+                assertEquals("no_login_no_super", cache.getRole(counting, "no_login_no_super").getRoleName());
+            }
+            assertEquals(1, queries.get());
+            connection.rollback();
+        }
+
+        // The background refresh does not count as use of the data source.
+        final ConnectionProvider provider = (ConnectionProvider) server.getDataSource(listener.getDatabaseName());
+        final long lastUsed = provider.getLastUsed();
+        final long borrowCount = provider.getBorrowCount();
+        Thread.sleep(500);
+        assertTrue(provider.getBorrowCount() > borrowCount);
+        assertEquals(lastUsed, provider.getLastUsed());
+        cache.invalidateAll();
+    }
+
     @DisplayName("Disabled Security SUPERUSER SET ROLE")
     @ParameterizedTest
     @ValueSource(strings = { "with_login_no_super", "with_login_with_super", "no_login_with_super", "no_login_no_super",
@@ -167,6 +260,572 @@ class TestBasicOperations {
         }
     }
 
+    @DisplayName("Connection ROLE Affinity")
+    @Test
+    void testConnectionRoleAffinity() throws SQLException {
+        final DatabaseListener listener = new TestDatabaseListener(server, "with_login_no_super") {
+            @Override
+            public void beforeCreate(final DataSourceSettings settings) {
+                super.beforeCreate(settings);
+                settings.setRoleAffinity(true);
+            }
+        };
+        final DataSourceContext context = server.getDataSource(listener.getDatabaseName());
+        assertTrue(context.isRoleAffinity());
+        context.setMaxPoolSize(1);
+
+        // The single connection keeps its ROLE between requests for the same ROLE.
+        for (int i = 0; i < 2; i++) {
+            assertCurrentUser(context.getConnection("no_login_no_super"), "no_login_no_super");
+        }
+
+        // A ROLE changed by the caller during a ROLE lease is set again on the next checkout.
+        for (final boolean isDeferredRole : new boolean[] { false, true, true }) {
+            ((ConnectionProvider) context).setDeferredRole(isDeferredRole);
+            try (final Connection connection = context.getConnection("no_login_no_super");
+                    Statement stmt = connection.createStatement()) {
+                stmt.execute("SET ROLE no_login_with_super");
+            }
+            assertCurrentUser(context.getConnection("no_login_no_super"), "no_login_no_super");
+        }
+        ((ConnectionProvider) context).setDeferredRole(false);
+
+        // A connection requested without a ROLE must be reset.
+        assertCurrentUser(context.getConnection(), "with_login_no_super");
+        assertCurrentUser(context.getConnection(), "with_login_no_super");
+    }
+
+    @DisplayName("Deferred ROLE")
+    @Test
+    void testDeferredRole() throws SQLException {
+        final DatabaseListener listener = new TestDatabaseListener(server, "with_login_no_super") {
+            @Override
+            public void beforeCreate(final DataSourceSettings settings) {
+                super.beforeCreate(settings);
+                settings.setDeferredRole(true);
+            }
+        };
+        final DataSourceContext context = server.getDataSource(listener.getDatabaseName());
+        assertTrue(context.isDeferredRole());
+
+        assertCurrentUser(context.getConnection("no_login_no_super"), "no_login_no_super");
+
+        try (final Connection connection = context.getConnection("no_login_no_super");
+                Statement stmt = connection.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT current_user")) {
+            assertTrue(rs.next());
+            assertEquals("no_login_no_super", rs.getString(1));
+        }
+
+        try (final Connection connection = context.getConnection("no_login_no_super");
+                PreparedStatement stmt = connection.prepareStatement("SELECT current_user, ?::int")) {
+            for (int i = 0; i < 2; i++) {
+                stmt.setInt(1, i);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    assertTrue(rs.next());
+                    assertEquals("no_login_no_super", rs.getString(1));
+                    assertEquals(i, rs.getInt(2));
+                }
+            }
+        }
+
+        // The statement connection keeps the pending ROLE, and unwrapping applies it.
+        try (final Connection connection = context.getConnection("no_login_no_super");
+                PreparedStatement stmt = connection.prepareStatement("SELECT 1")) {
+            assertSame(connection, stmt.getConnection());
+            try (Statement query = stmt.getConnection().createStatement();
+                    ResultSet rs = query.executeQuery("SELECT current_user")) {
+                assertTrue(rs.next());
+                assertEquals("no_login_no_super", rs.getString(1));
+            }
+        }
+        try (final Connection connection = context.getConnection("no_login_no_super");
+                Statement stmt = connection.createStatement();
+                Statement query = stmt.unwrap(Statement.class).getConnection().createStatement();
+                ResultSet rs = query.executeQuery("SELECT current_user")) {
+            assertTrue(rs.next());
+            assertEquals("no_login_no_super", rs.getString(1));
+        }
+
+        assertCurrentUser(context.getConnection(), "with_login_no_super");
+    }
+
+    private static void assertCurrentUser(final Connection connection, final String expected) throws SQLException {
+        try (connection;
+                PreparedStatement stmt = connection.prepareStatement("SELECT current_user");
+                ResultSet rs = stmt.executeQuery()) {
+            assertTrue(rs.next());
+            assertEquals(expected, rs.getString(1));
+        }
+    }
+
+    @DisplayName("Connection RESET ROLE Skipped Without ROLE")
+    @Test
+    void testConnectionResetRoleSkipped() throws SQLException {
+        final DatabaseListener listener = new TestDatabaseListener(server, "with_login_no_super") {
+            @Override
+            public void beforeCreate(final DataSourceSettings settings) {
+                super.beforeCreate(settings);
+                settings.setRoleAffinity(true);
+            }
+        };
+        final DataSourceContext context = server.getDataSource(listener.getDatabaseName());
+        context.setMaxPoolSize(1);
+        final InMemoryMetrics metrics = new InMemoryMetrics();
+        ((ConnectionProvider) context).setMetrics(metrics);
+        final String databaseName = listener.getDatabaseName();
+
+        // The first checkout resets the connection, later checkouts without a ROLE do not.
+        for (int i = 0; i < 3; i++) {
+            assertCurrentUser(context.getConnection(), "with_login_no_super");
+        }
+        assertEquals(1, metrics.getHistogram(InMemoryMetrics.ROLE_SWITCH, databaseName, null).getCount());
+
+        // A ROLE set by the caller is detected and reset on the next checkout.
+        try (final Connection connection = context.getConnection();
+                Statement stmt = connection.createStatement()) {
+            stmt.execute("SET ROLE no_login_no_super");
+        }
+        assertCurrentUser(context.getConnection(), "with_login_no_super");
+        assertEquals(2, metrics.getHistogram(InMemoryMetrics.ROLE_SWITCH, databaseName, null).getCount());
+
+        // The underlying connection reached from a statement or the metadata is treated as changed.
+        try (final Connection connection = context.getConnection();
+                PreparedStatement stmt = connection.prepareStatement("SELECT 1");
+                Statement raw = stmt.getConnection().createStatement()) {
+            raw.execute("SET ROLE no_login_no_super");
+        }
+        assertCurrentUser(context.getConnection(), "with_login_no_super");
+        try (final Connection connection = context.getConnection();
+                Statement raw = connection.getMetaData().getConnection().createStatement()) {
+            raw.execute("SET ROLE no_login_no_super");
+        }
+        assertCurrentUser(context.getConnection(), "with_login_no_super");
+        assertEquals(4, metrics.getHistogram(InMemoryMetrics.ROLE_SWITCH, databaseName, null).getCount());
+
+        // A ROLE lease is always reset on the next checkout without a ROLE.
+        assertCurrentUser(context.getConnection("no_login_no_super"), "no_login_no_super");
+        assertCurrentUser(context.getConnection(), "with_login_no_super");
+        assertEquals(5, metrics.getHistogram(InMemoryMetrics.ROLE_SWITCH, databaseName, null).getCount());
+    }
+
+    @DisplayName("Session Reset On Return")
+    @Test
+    void testSessionReset() throws SQLException {
+        final DatabaseListener listener = new TestDatabaseListener(server, "with_login_no_super") {
+            @Override
+            public void beforeCreate(final DataSourceSettings settings) {
+                super.beforeCreate(settings);
+                settings.setSessionReset(SessionReset.TEMP, SessionReset.ALL, SessionReset.PREPARED);
+            }
+        };
+        final DataSourceContext context = server.getDataSource(listener.getDatabaseName());
+        assertEquals(EnumSet.of(SessionReset.TEMP, SessionReset.ALL, SessionReset.PREPARED),
+                context.getSessionReset());
+        context.setMaxPoolSize(1);
+
+        try (final Connection connection = context.getConnection();
+                Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TEMP TABLE session_reset (id int)");
+            stmt.execute("SET search_path TO pg_catalog");
+            stmt.execute("SET ROLE no_login_no_super");
+        }
+
+        // The single connection is returned to the pool once the session is reset.
+        try (final Connection connection = context.getConnection();
+                PreparedStatement stmt = connection.prepareStatement(
+                        "SELECT to_regclass('pg_temp.session_reset'), current_setting('search_path'), current_user");
+                ResultSet rs = stmt.executeQuery()) {
+            assertTrue(rs.next());
+            assertNull(rs.getString(1));
+            assertEquals("\"$user\", public", rs.getString(2));
+            assertEquals("with_login_no_super", rs.getString(3));
+        }
+
+        // Cached ROLE statements are prepared again after DEALLOCATE ALL.
+        for (int i = 0; i < 8; i++) {
+            assertCurrentUser(context.getConnection("no_login_no_super"), "no_login_no_super");
+        }
+
+        // RESET ALL keeps the ROLE, so the next lease without a ROLE still resets it.
+        assertCurrentUser(context.getConnection(), "with_login_no_super");
+    }
+
+    @DisplayName("Session Reset ROLE Skips RESET ROLE")
+    @Test
+    void testSessionResetRole() throws SQLException {
+        final DatabaseListener listener = new TestDatabaseListener(server, "with_login_no_super") {
+            @Override
+            public void beforeCreate(final DataSourceSettings settings) {
+                super.beforeCreate(settings);
+                settings.setSessionReset(SessionReset.ROLE);
+            }
+        };
+        final DataSourceContext context = server.getDataSource(listener.getDatabaseName());
+        assertFalse(context.isRoleAffinity());
+        context.setMaxPoolSize(1);
+        final InMemoryMetrics metrics = new InMemoryMetrics();
+        ((ConnectionProvider) context).setMetrics(metrics);
+        final String databaseName = listener.getDatabaseName();
+
+        // A connection that was never returned through the session reset is reset at checkout.
+        assertCurrentUser(context.getConnection(), "with_login_no_super");
+        final long resets = metrics.getHistogram(InMemoryMetrics.ROLE_SWITCH, databaseName, null).getCount();
+
+        // The session reset reverted the ROLE, so checkouts send no RESET ROLE.
+        for (int i = 0; i < 3; i++) {
+            try (final Connection connection = context.getConnection();
+                    Statement stmt = connection.createStatement()) {
+                stmt.execute("SET ROLE no_login_no_super");
+            }
+            assertCurrentUser(context.getConnection(), "with_login_no_super");
+        }
+        assertCurrentUser(context.getConnection("no_login_no_super"), "no_login_no_super");
+        assertCurrentUser(context.getConnection(), "with_login_no_super");
+        assertEquals(resets, metrics.getHistogram(InMemoryMetrics.ROLE_SWITCH, databaseName, null).getCount());
+    }
+
+    @DisplayName("Transaction Scoped ROLE")
+    @Test
+    void testInTransaction() throws SQLException {
+        final DatabaseListener listener = new TestDatabaseListener(server, "with_login_no_super");
+        final DataSourceContext context = server.getDataSource(listener.getDatabaseName());
+        context.setMaxPoolSize(1);
+
+        final String user = context.inTransaction("no_login_no_super", connection -> {
+            try (PreparedStatement stmt = connection.prepareStatement("SELECT current_user");
+                    ResultSet rs = stmt.executeQuery()) {
+                assertTrue(rs.next());
+                return rs.getString(1);
+            }
+        });
+        assertEquals("no_login_no_super", user);
+
+        // The ROLE ended with the transaction.
+        assertCurrentUser(context.getConnection(), "with_login_no_super");
+
+        // The isolation level is set before the ROLE and only for the transaction.
+        assertEquals("no_login_no_super repeatable read", context.inTransaction("no_login_no_super",
+                Connection.TRANSACTION_REPEATABLE_READ, connection -> {
+                    try (PreparedStatement stmt = connection.prepareStatement(
+                            "SELECT current_user || ' ' || current_setting('transaction_isolation')");
+                            ResultSet rs = stmt.executeQuery()) {
+                        assertTrue(rs.next());
+                        return rs.getString(1);
+                    }
+                }));
+        assertEquals("with_login_no_super read committed", context.inTransaction(null, connection -> {
+            try (PreparedStatement stmt = connection.prepareStatement(
+                    "SELECT current_user || ' ' || current_setting('transaction_isolation')");
+                    ResultSet rs = stmt.executeQuery()) {
+                assertTrue(rs.next());
+                return rs.getString(1);
+            }
+        }));
+        assertThrows(IllegalArgumentException.class,
+                () -> context.inTransaction(null, Connection.TRANSACTION_NONE, connection -> null));
+
+        // The work cannot end the transaction and continue without the ROLE.
+        assertThrows(SQLException.class, () -> context.inTransaction("no_login_no_super", connection -> {
+            connection.commit();
+            return null;
+        }));
+
+        // SQL that ends the transaction is rejected before it is sent.
+        for (final String sql : new String[] { "COMMIT", "SELECT 1; end", "/* x */ ROLLBACK AND CHAIN" }) {
+            final SQLException e = assertThrows(SQLException.class, () -> context.inTransaction("no_login_no_super",
+                    connection -> {
+                        try (Statement stmt = connection.createStatement()) {
+                            stmt.execute(sql);
+                        }
+                        return null;
+                    }));
+            assertEquals("25000", e.getSQLState());
+        }
+        assertCurrentUser(context.getConnection(), "with_login_no_super");
+
+        // Savepoints, function bodies and literals do not end the transaction.
+        assertEquals("end", context.inTransaction("no_login_no_super", connection -> {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("SAVEPOINT s1; ROLLBACK TO SAVEPOINT s1");
+                stmt.execute("DO $$ BEGIN PERFORM 1; END; $$");
+                try (ResultSet rs = stmt.executeQuery("SELECT 'x;commit', CASE WHEN true THEN 'end' END")) {
+                    assertTrue(rs.next());
+                    return rs.getString(2);
+                }
+            }
+        }));
+
+        // SQL sent through the underlying connection is not checked, so the ROLE is checked before commit.
+        final SQLException e = assertThrows(SQLException.class, () -> context.inTransaction("no_login_no_super",
+                connection -> {
+                    try (Statement stmt = connection.unwrap(Connection.class).createStatement()) {
+                        stmt.execute("COMMIT");
+                        stmt.execute("SELECT 1");
+                    }
+                    return null;
+                }));
+        assertEquals("25000", e.getSQLState());
+        assertCurrentUser(context.getConnection(), "with_login_no_super");
+    }
+
+    @DisplayName("Transaction Retry")
+    @Test
+    void testInTransactionRetry() throws SQLException {
+        final DatabaseListener listener = new TestDatabaseListener(server, DISABLE_ROLE_SECURITY, "postrise") {
+            @Override
+            public void beforeCreate(final DataSourceSettings settings) {
+                super.beforeCreate(settings);
+                settings.setPassword(PostgresContainer.DB_PASS);
+                settings.setMaxTransactionRetries(2);
+                settings.setTransactionRetryBackoff(1);
+            }
+        };
+        final String databaseName = listener.getDatabaseName();
+        final DataSourceContext context = server.getDataSource(databaseName);
+        final InMemoryMetrics metrics = new InMemoryMetrics();
+        ((ConnectionProvider) context).setMetrics(metrics);
+        final AtomicInteger attempts = new AtomicInteger();
+
+        try (final Connection connection = context.getConnection();
+                Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE serializable_retry (id int)");
+            stmt.execute("GRANT SELECT, INSERT ON serializable_retry TO no_login_no_super");
+        }
+
+        // Each transaction reads the row the other inserts, so one of them fails with a serialization
+        // failure and is retried.
+        final CountDownLatch bothRead = new CountDownLatch(2);
+        final Function<Integer, TransactionCallback<Integer>> work = id -> connection -> {
+            final int attempt = attempts.incrementAndGet();
+            try (Statement stmt = connection.createStatement()) {
+                try (ResultSet rs = stmt.executeQuery("SELECT count(*) FROM serializable_retry WHERE id = " + -id)) {
+                    assertTrue(rs.next());
+                }
+                if (attempt <= 2) {
+                    await(bothRead);
+                }
+                stmt.execute("INSERT INTO serializable_retry VALUES (" + id + ")");
+            }
+            return attempt;
+        };
+        final CompletableFuture<Integer> other = CompletableFuture.supplyAsync(() -> {
+            try {
+                return server.inTransaction(databaseName, "no_login_no_super", Connection.TRANSACTION_SERIALIZABLE,
+                        work.apply(-1));
+            } catch (final SQLException e) {
+                throw new CompletionException(e);
+            }
+        });
+        context.inTransaction("no_login_no_super", Connection.TRANSACTION_SERIALIZABLE, work.apply(1));
+        other.join();
+        assertEquals(3, attempts.get());
+        assertEquals(1, metrics.getHistogram(InMemoryMetrics.TRANSACTION_RETRY, databaseName, "no_login_no_super")
+                .getCount());
+
+        // Deadlocks are retried up to the maximum, other failures are not retried.
+        attempts.set(0);
+        assertThrows(SQLException.class, () -> context.inTransaction("no_login_no_super", connection -> {
+            attempts.incrementAndGet();
+            throw new SQLException("deadlock detected", "40P01");
+        }));
+        assertEquals(3, attempts.get());
+        attempts.set(0);
+        assertThrows(SQLException.class, () -> context.inTransaction("no_login_no_super", connection -> {
+            attempts.incrementAndGet();
+            throw new SQLException("syntax error", "42601");
+        }));
+        assertEquals(1, attempts.get());
+        assertEquals(0, context.getActiveConnections());
+    }
+
+    private static void await(final CountDownLatch latch) throws SQLException {
+        latch.countDown();
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(e);
+        }
+    }
+
+    @DisplayName("Streaming Query")
+    @Test
+    void testStream() throws SQLException {
+        final DatabaseListener listener = new TestDatabaseListener(server, "with_login_no_super") {
+            @Override
+            public void beforeCreate(final DataSourceSettings settings) {
+                super.beforeCreate(settings);
+                settings.setFetchSize(100);
+            }
+        };
+        final DataSourceContext context = server.getDataSource(listener.getDatabaseName());
+        assertEquals(100, context.getFetchSize());
+
+        // The connection is returned once the last row is read.
+        final String sql = "SELECT generate_series(1, ?)";
+        assertEquals(50005000L, context.stream(sql, rs -> rs.getLong(1), 10000)
+                .mapToLong(Long::longValue).sum());
+        assertEquals(0, context.getActiveConnections());
+
+        // The connection is returned when a partly read stream is closed.
+        try (Stream<Long> rows = context.stream(sql, rs -> rs.getLong(1), 10000)) {
+            assertEquals(List.of(1L, 2L, 3L), rows.limit(3).collect(Collectors.toList()));
+            assertEquals(1, context.getActiveConnections());
+        }
+        assertEquals(0, context.getActiveConnections());
+
+        try (Stream<String> rows = context.stream("no_login_no_super", "SELECT current_user", rs -> rs.getString(1))) {
+            assertEquals("no_login_no_super", rows.findFirst().orElseThrow());
+        }
+
+        // A mapper may return null.
+        assertEquals(Arrays.asList("a", null), context.stream("SELECT unnest(ARRAY['a', NULL])",
+                rs -> rs.getString(1)).collect(Collectors.toList()));
+
+        // A failed row or query returns the connection. Writes are rejected in the read-only transaction.
+        final UncheckedSQLException e = assertThrows(UncheckedSQLException.class,
+                () -> context.stream("SELECT 1", rs -> {
+                    throw new SQLException("mapper failed");
+                }).count());
+        assertEquals("mapper failed", e.getCause().getMessage());
+        assertThrows(SQLException.class, () -> context.stream("CREATE TABLE stream_write (id int)", rs -> 1));
+        assertEquals(0, context.getActiveConnections());
+    }
+
+    @DisplayName("Bulk COPY")
+    @Test
+    void testBulkCopy() throws Exception {
+        final DataSourceContext context = server.getDataSource(PostgresContainer.DB_NAME);
+        try (final Connection connection = context.getConnection();
+                Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE bulk_copy_text (id int, name text)");
+            stmt.execute("CREATE TABLE bulk_copy_binary (id int, name text)");
+        }
+        final BulkCopy copy = context.copy();
+
+        // Text format from a stream and a channel, several inputs in parallel.
+        final String copyText = "COPY bulk_copy_text FROM STDIN";
+        assertEquals(2, copy.copyIn(copyText, new ByteArrayInputStream("1\tone\n2\ttwo\n".getBytes(UTF_8))));
+        assertEquals(1, copy.copyIn(copyText,
+                Channels.newChannel(new ByteArrayInputStream("3\tthree\n".getBytes(UTF_8)))));
+        assertEquals(List.of(1L, 1L, 1L), copy.copyIn(copyText, List.of(
+                new ByteArrayInputStream("4\tfour\n".getBytes(UTF_8)),
+                new ByteArrayInputStream("5\tfive\n".getBytes(UTF_8)),
+                new ByteArrayInputStream("6\tsix\n".getBytes(UTF_8))), 2));
+
+        // Binary format round trip.
+        final ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        assertEquals(6, copy.copyOut("COPY bulk_copy_text TO STDOUT (FORMAT binary)", binary));
+        assertEquals(6, copy.copyIn("COPY bulk_copy_binary FROM STDIN (FORMAT binary)",
+                new ByteArrayInputStream(binary.toByteArray())));
+        final ByteArrayOutputStream text = new ByteArrayOutputStream();
+        copy.copyOut("COPY (SELECT * FROM bulk_copy_binary WHERE id = 3) TO STDOUT", Channels.newChannel(text));
+        assertEquals("3\tthree\n", text.toString(UTF_8));
+
+        // A failed load is rolled back.
+        assertThrows(SQLException.class,
+                () -> copy.copyIn(copyText, new ByteArrayInputStream("7\tseven\nbad\n".getBytes(UTF_8))));
+        text.reset();
+        copy.copyOut("COPY (SELECT count(*) FROM bulk_copy_text) TO STDOUT", text);
+        assertEquals("6\n", text.toString(UTF_8));
+
+        text.reset();
+        context.copy("no_login_no_super").copyOut("COPY (SELECT current_user) TO STDOUT", text);
+        assertEquals("no_login_no_super\n", text.toString(UTF_8));
+        assertEquals(0, context.getActiveConnections());
+    }
+
+    @DisplayName("Write-Behind Queue")
+    @Test
+    void testWriteBehind() throws Exception {
+        final DatabaseListener listener = new TestDatabaseListener(server, DISABLE_ROLE_SECURITY, "postrise") {
+            @Override
+            public void beforeCreate(final DataSourceSettings settings) {
+                super.beforeCreate(settings);
+                settings.setPassword(PostgresContainer.DB_PASS);
+                settings.setWriteBehindBatchSize(3);
+                settings.setWriteBehindFlushInterval(50);
+                settings.setWriteBehindCapacity(10);
+                settings.addDataSourceProperty("reWriteBatchedInserts", true);
+            }
+        };
+        final DataSourceContext context = server.getDataSource(listener.getDatabaseName());
+        try (final Connection connection = context.getConnection();
+                Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE write_behind (id int PRIMARY KEY, name text)");
+        }
+        final WriteBehindQueue queue = context.getWriteBehind();
+        assertSame(queue, context.getWriteBehind());
+
+        // A full batch and a partial batch flushed by the interval.
+        final String insert = "INSERT INTO write_behind (id, name) VALUES (?, ?)";
+        final List<CompletableFuture<Integer>> writes = List.of(
+                queue.submit(insert, 1, "one"),
+                queue.submit(insert, 2, "two"),
+                queue.submit(insert, 3, "three"),
+                queue.submit("UPDATE write_behind SET name = ? WHERE id = ?", "uno", 1));
+        CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).get();
+        assertEquals(1, writes.get(3).get());
+
+        // A failed write fails every write of its flush.
+        final CompletableFuture<Integer> good = queue.submit(insert, 4, "four");
+        final CompletableFuture<Integer> bad = queue.submit(insert, 1, "duplicate");
+        assertThrows(Exception.class, bad::get);
+        assertThrows(Exception.class, good::get);
+        assertEquals(0, queue.getPendingWrites());
+
+        try (final Connection connection = context.getConnection();
+                PreparedStatement stmt = connection.prepareStatement(
+                        "SELECT string_agg(name, ',' ORDER BY id) FROM write_behind");
+                ResultSet rs = stmt.executeQuery()) {
+            assertTrue(rs.next());
+            assertEquals("uno,two,three", rs.getString(1));
+        }
+
+        // The writes of a ROLE queue run as the ROLE, and the other queue runs as the LOGIN user.
+        try (final Connection connection = context.getConnection();
+                Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE write_behind_user (id int, name text DEFAULT current_user)");
+            stmt.execute("GRANT INSERT ON write_behind_user TO no_login_no_super");
+        }
+        final WriteBehindQueue roleQueue = context.getWriteBehind("no_login_no_super");
+        assertSame(roleQueue, context.getWriteBehind("no_login_no_super"));
+        assertEquals("no_login_no_super", roleQueue.getRoleName());
+        assertNull(queue.getRoleName());
+        final String insertUser = "INSERT INTO write_behind_user (id) VALUES (?)";
+        CompletableFuture.allOf(roleQueue.submit(insertUser, 1), queue.submit(insertUser, 2)).get();
+        try (final Connection connection = context.getConnection();
+                PreparedStatement stmt = connection.prepareStatement(
+                        "SELECT string_agg(name, ',' ORDER BY id) FROM write_behind_user");
+                ResultSet rs = stmt.executeQuery()) {
+            assertTrue(rs.next());
+            assertEquals("no_login_no_super,postrise", rs.getString(1));
+        }
+        assertEquals(0, context.getActiveConnections());
+    }
+
+    @DisplayName("ROLE Statements Stay Prepared")
+    @Test
+    void testRoleStatementsPrepared() throws SQLException {
+        final DatabaseListener listener = new TestDatabaseListener(server, "with_login_no_super");
+        final DataSourceContext context = server.getDataSource(listener.getDatabaseName());
+        context.setMaxPoolSize(1);
+
+        // Past the driver prepare threshold the ROLE statements are server prepared.
+        for (int i = 0; i < 8; i++) {
+            assertCurrentUser(context.getConnection("no_login_no_super"), "no_login_no_super");
+        }
+
+        try (final Connection connection = context.getConnection();
+                PreparedStatement stmt = connection.prepareStatement(
+                        "SELECT count(*) FROM pg_prepared_statements WHERE statement LIKE '%set_config%'");
+                ResultSet rs = stmt.executeQuery()) {
+            assertTrue(rs.next());
+            assertEquals(1, rs.getInt(1));
+        }
+    }
+
     @DisplayName("ROLE Query")
     @Test
     void testRoleQuery() throws SQLException {
@@ -20,12 +20,22 @@ import static org.adonix.postrise.security.RoleSecurityProvider.DISABLE_ROLE_SEC
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import nl.altindag.log.LogCaptor;
 
 import org.adonix.postrise.servers.PostgresContainer;
@@ -192,6 +202,428 @@ class TestEdgeCases {
         }
     }
 
+    @DisplayName("Evict Least Recently Used Data Source")
+    @Test
+    void testEvictDataSource() throws Exception {
+        try (final Server server = new TestServer() {
+            @Override
+            public void beforeCreate(final DataSourceSettings settings) {
+                super.beforeCreate(settings);
+                settings.setRoleSecurity(DISABLE_ROLE_SECURITY);
+            }
+
+            @Override
+            protected int getMaxDataSources() {
+                return 1;
+            }
+        }) {
+            final String first = TestDatabaseCreator.createTestDatabase(server);
+            final String second = TestDatabaseCreator.createTestDatabase(server);
+            try (final Connection connection = server.getConnection(first)) {
+                assertNotNull(connection);
+            }
+            final DataSourceContext evicted = server.getDataSource(first);
+            try (final Connection connection = server.getConnection(second)) {
+                assertNotNull(connection);
+            }
+            for (int i = 0; i < 50 && !evicted.isClosed(); i++) {
+                Thread.sleep(100);
+            }
+            assertTrue(evicted.isClosed());
+            assertThat(server.getDatabaseNames()).containsExactly(second);
+            try (final Connection connection = server.getConnection(first)) {
+                assertNotNull(connection);
+            }
+        }
+    }
+
+    @DisplayName("Server Connection Budget")
+    @Test
+    void testConnectionBudget() throws Exception {
+        try (final Server server = new TestServer() {
+            @Override
+            public void beforeCreate(final DataSourceSettings settings) {
+                super.beforeCreate(settings);
+                settings.setRoleSecurity(DISABLE_ROLE_SECURITY);
+                settings.setMaxPoolSize(5);
+                settings.setMinIdle(1);
+            }
+
+            @Override
+            protected int getMaxConnections() {
+                return 8;
+            }
+
+            @Override
+            protected Duration getRebalanceInterval() {
+                return Duration.ofMillis(50);
+            }
+        }) {
+            final DataSourceContext hot = server.getDataSource(TestDatabaseCreator.createTestDatabase(server));
+            final DataSourceContext cold = server.getDataSource(TestDatabaseCreator.createTestDatabase(server));
+            // A new data source starts within the connections left in the budget.
+            assertTrue(hot.getMaxPoolSize() + cold.getMaxPoolSize() <= 8);
+            final List<Connection> connections = new ArrayList<>();
+            try {
+                for (int i = 0; i < 4; i++) {
+                    connections.add(hot.getConnection());
+                }
+                for (int i = 0; i < 50 && hot.getMaxPoolSize() < 5; i++) {
+                    Thread.sleep(50);
+                }
+                assertEquals(5, hot.getMaxPoolSize());
+                assertTrue(cold.getMaxPoolSize() >= 1);
+                int total = 0;
+                for (final String databaseName : server.getDatabaseNames()) {
+                    total += server.getDataSource(databaseName).getMaxPoolSize();
+                }
+                assertTrue(total <= 8);
+            } finally {
+                for (final Connection connection : connections) {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    @DisplayName("Adaptive Pool Size")
+    @Test
+    void testAdaptivePoolSize() throws Exception {
+        try (final Server server = new TestServer() {
+            @Override
+            public void beforeCreate(final DataSourceSettings settings) {
+                super.beforeCreate(settings);
+                settings.setRoleSecurity(DISABLE_ROLE_SECURITY);
+                settings.setAdaptivePoolSize(true);
+                settings.setMaxPoolSize(5);
+                settings.setMinIdle(1);
+            }
+
+            @Override
+            protected Duration getRebalanceInterval() {
+                return Duration.ofMillis(50);
+            }
+        }) {
+            final DataSourceContext dataSource = server.getDataSource(PostgresContainer.DB_NAME);
+            for (int i = 0; i < 100 && dataSource.getMaxPoolSize() > 1; i++) {
+                Thread.sleep(50);
+            }
+            assertEquals(1, dataSource.getMaxPoolSize());
+            try (final Connection connection = dataSource.getConnection()) {
+                final CompletableFuture<Connection> waiting = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return dataSource.getConnection();
+                    } catch (final SQLException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+                waiting.get().close();
+            }
+            assertTrue(dataSource.getMaxPoolSize() > 1);
+        }
+    }
+
+    @DisplayName("Fair Checkout")
+    @Test
+    void testFairCheckout() throws Exception {
+        try (final Server server = new TestServer() {
+            @Override
+            public void beforeCreate(final DataSourceSettings settings) {
+                super.beforeCreate(settings);
+                settings.setFairCheckout(true);
+                settings.setMaxPoolSize(2);
+                settings.setMinIdle(1);
+                settings.setConnectionTimeout(250);
+            }
+        }) {
+            final DataSourceContext dataSource = server.getDataSource(PostgresContainer.DB_NAME);
+            final Connection first = dataSource.getConnection();
+            try (final Connection second = dataSource.getConnection()) {
+                assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+                first.close();
+                dataSource.getConnection().close();
+            }
+            final List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    try (final Connection connection = dataSource.getConnection()) {
+                        assertNotNull(connection);
+                    } catch (final SQLException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get();
+            assertEquals(0, dataSource.getActiveConnections());
+
+            // A permit taken before the setting changed is still released.
+            final Connection leased = dataSource.getConnection();
+            dataSource.setFairCheckout(false);
+            leased.close();
+            dataSource.setFairCheckout(true);
+            try (final Connection connection1 = dataSource.getConnection();
+                    Connection connection2 = dataSource.getConnection()) {
+                assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+            }
+
+            // The waits at the gate and in the pool together are bounded by the connection timeout.
+            dataSource.setFairCheckout(false);
+            try (final Connection unfair = dataSource.getConnection()) {
+                dataSource.setFairCheckout(true);
+                try (final Connection fair = dataSource.getConnection()) {
+                    final CompletableFuture<Void> waiting = CompletableFuture.runAsync(
+                            () -> assertThrows(SQLTransientConnectionException.class, dataSource::getConnection));
+                    Thread.sleep(50);
+                    final long start = System.nanoTime();
+                    assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+                    assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(400));
+                    waiting.get();
+                }
+            }
+        }
+    }
+
+    @DisplayName("Async After Events")
+    @Test
+    void testAsyncEvents() throws Exception {
+        final CompletableFuture<String> afterCreate = new CompletableFuture<>();
+        final CompletableFuture<String> afterClose = new CompletableFuture<>();
+        try (final Server server = new TestServer() {
+            @Override
+            protected boolean isAsyncEvents() {
+                return true;
+            }
+        }) {
+            server.addListener(new DataSourceListener() {
+                @Override
+                public void afterCreate(final DataSourceContext context) {
+                    afterCreate.complete(Thread.currentThread().getName());
+                }
+
+                @Override
+                public void afterClose(final DataSourceContext context) {
+                    afterClose.complete(Thread.currentThread().getName());
+                }
+            });
+            server.getDataSource(PostgresContainer.DB_NAME);
+            assertThat(afterCreate.get(5, TimeUnit.SECONDS)).startsWith("postrise-events");
+        }
+        assertThat(afterClose.get(5, TimeUnit.SECONDS)).startsWith("postrise-events");
+    }
+
+    @DisplayName("Parallel Close With Timeout")
+    @Test
+    void testParallelClose() throws Exception {
+        final List<String> timedOut = new CopyOnWriteArrayList<>();
+        final AtomicInteger closed = new AtomicInteger();
+        final Server server = new TestServer() {
+            @Override
+            public void beforeCreate(final DataSourceSettings settings) {
+                super.beforeCreate(settings);
+                settings.setRoleSecurity(DISABLE_ROLE_SECURITY);
+            }
+
+            @Override
+            protected int getCloseParallelism() {
+                return 4;
+            }
+
+            @Override
+            protected Duration getCloseTimeout() {
+                return Duration.ofMillis(300);
+            }
+
+            @Override
+            protected void onCloseTimeout(final DataSourceContext context) {
+                timedOut.add(context.getDatabaseName());
+            }
+        };
+        server.addListener(new DataSourceListener() {
+            @Override
+            public void afterClose(final DataSourceContext context) {
+                closed.incrementAndGet();
+            }
+        });
+        final String first = TestDatabaseCreator.createTestDatabase(server);
+        final String second = TestDatabaseCreator.createTestDatabase(server);
+        server.getDataSource(second);
+        final Connection active = server.getConnection(first);
+        final int dataSources = server.getDatabaseNames().size();
+        server.close();
+        assertEquals(List.of(first), timedOut);
+        assertEquals(dataSources, closed.get());
+        // The connection was aborted by the close.
+        assertThrows(SQLException.class, () -> active.createStatement().execute("SELECT 1"));
+        active.close();
+    }
+
+    @DisplayName("Drain Before Close")
+    @Test
+    void testDrain() throws Exception {
+        final Server server = new TestServer();
+        final Connection active = server.getConnection(PostgresContainer.DB_NAME);
+        final CompletableFuture<Boolean> drained = CompletableFuture
+                .supplyAsync(() -> server.drain(Duration.ofSeconds(10)));
+        IllegalStateException draining = null;
+        for (int i = 0; i < 100 && draining == null; i++) {
+            try (final Connection connection = server.getConnection(PostgresContainer.DB_NAME)) {
+                Thread.sleep(10);
+            } catch (final IllegalStateException e) {
+                draining = e;
+            }
+        }
+        assertNotNull(draining);
+        assertThat(draining.getMessage()).endsWith("is draining");
+        assertFalse(drained.isDone());
+        active.close();
+        assertTrue(drained.get(5, TimeUnit.SECONDS));
+        assertThrows(IllegalStateException.class, () -> server.getConnection(PostgresContainer.DB_NAME));
+        assertFalse(server.drain(Duration.ZERO));
+    }
+
+    private static PostgresReplicaServer getReplicaServer(final Server primary, final PostgresHost replica) {
+        return new PostgresReplicaServer() {
+            @Override
+            public String getHostName() {
+                return primary.getHostName();
+            }
+
+            @Override
+            public Integer getPort() {
+                return primary.getPort();
+            }
+
+            @Override
+            public void beforeCreate(final DataSourceSettings settings) {
+                settings.setUsername(PostgresContainer.DB_USER);
+                settings.setPassword(PostgresContainer.DB_PASS);
+                settings.setRoleSecurity(DISABLE_ROLE_SECURITY);
+            }
+
+            @Override
+            protected List<PostgresHost> getReplicaHosts() {
+                return List.of(replica);
+            }
+        };
+    }
+
+    @DisplayName("Read Replica Routing")
+    @Test
+    void testReadReplica() throws SQLException {
+        try (final Server primary = new TestServer()) {
+            final PostgresHost host = new PostgresHost(primary.getHostName(), primary.getPort());
+            try (final PostgresReplicaServer server = getReplicaServer(primary, host)) {
+                try (final Connection connection = server.getReadConnection(PostgresContainer.DB_NAME)) {
+                    assertEquals(1, server.getActiveConnections());
+                    assertTrue(connection.isReadOnly());
+                }
+                // The read was served by the replica without creating a primary data source.
+                assertTrue(server.getDatabaseNames().isEmpty());
+                assertTrue(server.getTotalConnections() > 0);
+            }
+            final PostgresHost unavailable = new PostgresHost(host.getHostName(), 1);
+            try (final PostgresReplicaServer server = getReplicaServer(primary, unavailable)) {
+                // The unavailable replica falls back to a read-only primary connection.
+                try (final Connection connection = server.getReadConnection(PostgresContainer.DB_NAME);
+                        Statement stmt = connection.createStatement()) {
+                    assertTrue(connection.isReadOnly());
+                    final SQLException e = assertThrows(SQLException.class,
+                            () -> stmt.execute("CREATE TABLE read_only_fallback (id int)"));
+                    assertEquals("25006", e.getSQLState());
+                }
+                assertThat(server.getDatabaseNames()).containsExactly(PostgresContainer.DB_NAME);
+                // The primary connection is read-write again once returned.
+                try (final Connection connection = server.getConnection(PostgresContainer.DB_NAME);
+                        Statement stmt = connection.createStatement();
+                        ResultSet rs = stmt.executeQuery("SHOW transaction_read_only")) {
+                    assertFalse(connection.isReadOnly());
+                    assertTrue(rs.next());
+                    assertEquals("off", rs.getString(1));
+                }
+                // Primary connections keep the driver default, so read-only is a hint in auto-commit mode.
+                try (final Connection connection = server.getConnection(PostgresContainer.DB_NAME);
+                        Statement stmt = connection.createStatement()) {
+                    connection.setReadOnly(true);
+                    stmt.execute("CREATE TEMP TABLE read_only_primary (id int)");
+                }
+            }
+        }
+    }
+
+    @DisplayName("Failover Host List")
+    @Test
+    void testFailoverHosts() throws Exception {
+        try (final Server primary = new TestServer()) {
+            final List<PostgresHost> hosts = List.of(new PostgresHost(primary.getHostName(), 1),
+                    new PostgresHost(primary.getHostName(), primary.getPort()));
+            final AtomicInteger created = new AtomicInteger();
+            try (final Server server = new PostgresFailoverServer() {
+                @Override
+                protected List<PostgresHost> getHosts() {
+                    return hosts;
+                }
+
+                @Override
+                protected Duration getFailoverProbeInterval() {
+                    return Duration.ofMillis(50);
+                }
+
+                @Override
+                public void beforeCreate(final DataSourceSettings settings) {
+                    settings.setUsername(PostgresContainer.DB_USER);
+                    settings.setPassword(PostgresContainer.DB_PASS);
+                    settings.setRoleSecurity(DISABLE_ROLE_SECURITY);
+                    settings.setMaxPoolSize(1);
+                }
+
+                @Override
+                public void afterCreate(final DataSourceContext context) {
+                    created.incrementAndGet();
+                }
+            }) {
+                // The unreachable first host is skipped for the primary.
+                final DataSourceContext dataSource = server.getDataSource(PostgresContainer.DB_NAME);
+                try (final Connection connection = dataSource.getConnection();
+                        final Statement stmt = connection.createStatement()) {
+                    Thread.sleep(500);
+                    // The probe has its own connection while the pool is exhausted.
+                    try (final ResultSet rs = stmt.executeQuery("SELECT count(*) FROM pg_stat_activity"
+                            + " WHERE application_name = 'postrise-failover-probe'")) {
+                        rs.next();
+                        assertEquals(1, rs.getInt(1));
+                    }
+                }
+                // The probe found the primary, so the data source was not rebuilt.
+                assertEquals(dataSource, server.getDataSource(PostgresContainer.DB_NAME));
+                assertEquals(1, created.get());
+            }
+        }
+    }
+
+    @DisplayName("In-Memory Metrics")
+    @Test
+    void testInMemoryMetrics() throws SQLException {
+        final InMemoryMetrics metrics = new InMemoryMetrics();
+        try (final Server server = new TestServer() {
+            @Override
+            protected PostriseMetrics getMetrics() {
+                return metrics;
+            }
+        }) {
+            final String databaseName = PostgresContainer.DB_NAME;
+            try (final Connection connection = server.getConnection(databaseName)) {
+                assertNotNull(connection);
+            }
+            assertEquals(1, metrics.getHistogram(InMemoryMetrics.CREATE, databaseName, null).getCount());
+            assertTrue(metrics.getHistogram(InMemoryMetrics.BORROW_WAIT, databaseName, null).getCount() >= 2);
+            assertTrue(metrics.getHistogram(InMemoryMetrics.HOLD_TIME, databaseName, null).getCount() >= 2);
+            assertTrue(metrics.getHistogram(InMemoryMetrics.ROLE_SWITCH, databaseName, null).getCount() >= 2);
+            assertTrue(metrics.getHistogram(InMemoryMetrics.LISTENER, databaseName, "beforeCreate").getCount() >= 1);
+            assertThrows(CreateDataSourceException.class, () -> server.getDataSource("missing_database"));
+            assertEquals(1, metrics.getHistogram(InMemoryMetrics.CREATE_FAILURE, "missing_database", null).getCount());
+        }
+    }
+
     @DisplayName("Server Close Idempotency")
     @Test
     void testServerCloseIdempotency() {
@@ -259,7 +691,7 @@ class TestEdgeCases {
 
     @DisplayName("Roles Not Supported")
     @Test
-    void testRolesNotSupported() {
+    void testRolesNotSupported() throws SQLException {
         try (final PostgresServer server = new StaticPortServer() {
 
             @Override
@@ -271,6 +703,18 @@ class TestEdgeCases {
                     () -> server.getConnection(PostgresContainer.DB_NAME, "no_roles"));
             assertEquals(PostgresDataSourceNoRoles.class.getSimpleName() + " does not support roles",
                     t.getMessage());
+
+            // Transactions run as the LOGIN user.
+            assertEquals("serializable", server.inTransaction(PostgresContainer.DB_NAME, null,
+                    Connection.TRANSACTION_SERIALIZABLE, connection -> {
+                        try (Statement stmt = connection.createStatement();
+                                ResultSet rs = stmt.executeQuery("SHOW transaction_isolation")) {
+                            assertTrue(rs.next());
+                            return rs.getString(1);
+                        }
+                    }));
+            assertThrows(UnsupportedOperationException.class,
+                    () -> server.inTransaction(PostgresContainer.DB_NAME, "no_roles", connection -> null));
         }
     }
 }
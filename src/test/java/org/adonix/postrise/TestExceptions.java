@@ -25,6 +25,8 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import org.adonix.postrise.security.PostgresRoleDAO;
 import org.adonix.postrise.security.RoleSecurityException;
@@ -209,4 +211,50 @@ class TestExceptions {
             assertEquals("SECURITY: role \"role_does_not_exist\" does not exist", t.getMessage());
         }
     }
+
+    @DisplayName("Deferred ROLE Exception")
+    @ParameterizedTest(name = "[{index}] Role: {0}")
+    @CsvSource({
+            "role_does_not_exist, SECURITY: role \"role_does_not_exist\" does not exist",
+            "connection_limited, SECURITY: permission denied to set role \"connection_limited\""
+    })
+    void testDeferredRoleException(final String role, final String expectedMessage) throws SQLException {
+        final String databaseName = new TestDatabaseListener(server, "with_login_no_super") {
+            @Override
+            public void beforeCreate(final DataSourceSettings settings) {
+                super.beforeCreate(settings);
+                settings.setDeferredRole(true);
+            }
+        }.getDatabaseName();
+
+        try (final Connection connection = server.getConnection(databaseName, role);
+                PreparedStatement stmt = connection.prepareStatement("SELECT 1")) {
+            final Throwable t = assertThrows(RoleSecurityException.class, stmt::executeQuery);
+            assertEquals(expectedMessage, t.getMessage());
+        }
+    }
+
+    @DisplayName("Deferred ROLE Statement Permission Exception")
+    @Test
+    void testDeferredRoleStatementException() throws SQLException {
+        final String databaseName = new TestDatabaseListener(server, "with_login_no_super") {
+            @Override
+            public void beforeCreate(final DataSourceSettings settings) {
+                super.beforeCreate(settings);
+                settings.setDeferredRole(true);
+            }
+        }.getDatabaseName();
+
+        // A permission error of the statement is not reported as a ROLE error.
+        try (final Connection connection = server.getConnection(databaseName, "no_login_no_super");
+                PreparedStatement stmt = connection.prepareStatement("SELECT * FROM pg_authid")) {
+            final PSQLException e = assertThrows(PSQLException.class, stmt::executeQuery);
+            assertEquals("42501", e.getSQLState());
+            try (PreparedStatement query = connection.prepareStatement("SELECT current_user");
+                    ResultSet rs = query.executeQuery()) {
+                assertTrue(rs.next());
+                assertEquals("no_login_no_super", rs.getString(1));
+            }
+        }
+    }
 }